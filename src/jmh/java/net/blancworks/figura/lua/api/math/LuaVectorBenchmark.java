@@ -0,0 +1,54 @@
+package net.blancworks.figura.lua.api.math;
+
+import org.luaj.vm2.Globals;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.lib.jse.JsePlatform;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+//Throughput and allocations of calling vector methods from a script, in both call styles.
+//Run with: gradlew jmh, the gc profiler is on, so allocations per call show up as gc.alloc.rate.norm.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class LuaVectorBenchmark {
+    private static final int CALLS = 1000;
+
+    private LuaValue colonCalls;
+    private LuaValue dotCalls;
+    private LuaValue newVectors;
+
+    @Setup
+    public void setup() {
+        Globals globals = JsePlatform.standardGlobals();
+        globals.set("a", new LuaVector(1f, 2f, 3f));
+        globals.set("b", new LuaVector(4f, 5f, 6f));
+
+        colonCalls = globals.load("local s = 0 for i = 1, " + CALLS + " do s = s + a:dot(b) + a:getLength() end return s");
+        dotCalls = globals.load("local s = 0 for i = 1, " + CALLS + " do s = s + a.dot(b) + a.getLength() end return s");
+        //a new vector every call, so every lookup has to bind
+        newVectors = globals.load("local s = 0 for i = 1, " + CALLS + " do local c = a:cross(b) s = s + c:getLength() end return s");
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CALLS)
+    public LuaValue colonCall() {
+        return colonCalls.call();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CALLS)
+    public LuaValue dotCall() {
+        return dotCalls.call();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CALLS)
+    public LuaValue newVectorCall() {
+        return newVectors.call();
+    }
+}
@@ -0,0 +1,202 @@
+package net.blancworks.figura.models;
+
+import it.unimi.dsi.fastutil.floats.FloatArrayList;
+import net.blancworks.figura.mixin.Matrix3fAccessorMixin;
+import net.blancworks.figura.mixin.Matrix4fAccessorMixin;
+import net.minecraft.client.render.VertexConsumer;
+import net.minecraft.client.util.math.Vector3f;
+import net.minecraft.client.util.math.Vector4f;
+import net.minecraft.util.math.Matrix3f;
+import net.minecraft.util.math.Matrix4f;
+import net.minecraft.util.math.Quaternion;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+//Emitting a part's vertices, before and after renderCube stopped allocating per vertex.
+//"allocating" is the old loop, a Vector4f and a Vector3f per vertex, "renderCube" is the current one.
+//Run with: gradlew jmh, the gc profiler is on, so allocations per vertex show up as gc.alloc.rate.norm.
+//The mixin accessors aren't applied outside the game, so renderCube gets the same matrices through plain implementations of them.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class CustomModelPartRenderBenchmark {
+    //vertices in the part, 24 per cube
+    @Param({"24", "2400"})
+    public int vertices;
+
+    private CustomModelPart part;
+
+    private Matrix4f modelMatrix;
+    private Matrix3f normalMatrix;
+    private Matrix4fAccessorMixin model;
+    private Matrix3fAccessorMixin normal;
+
+    private VertexConsumer consumer;
+
+    @Setup
+    public void setup(Blackhole blackhole) {
+        Random random = new Random(0);
+
+        part = new CustomModelPart();
+        FloatArrayList data = new FloatArrayList(vertices * 8);
+        for (int i = 0; i < vertices * 8; i++) {
+            data.add(random.nextFloat() * 16f - 8f);
+        }
+        part.vertexData = data;
+        part.vertexCount = vertices;
+
+        //30 degrees around y
+        Quaternion rotation = Vector3f.POSITIVE_Y.getDegreesQuaternion(30f);
+        modelMatrix = new Matrix4f(rotation);
+        normalMatrix = new Matrix3f(rotation);
+
+        float sin = (float) Math.sin(Math.toRadians(30)), cos = (float) Math.cos(Math.toRadians(30));
+        model = new Model(cos, sin);
+        normal = new Normal(cos, sin);
+
+        consumer = new SinkVertexConsumer(blackhole);
+    }
+
+    @Benchmark
+    public int allocating() {
+        int leftToRender = Integer.MAX_VALUE;
+
+        for (int i = 1; i <= part.vertexCount; i++) {
+            int startIndex = (i - 1) * 8;
+
+            Vector4f fullVert = new Vector4f(
+                    part.vertexData.getFloat(startIndex++),
+                    part.vertexData.getFloat(startIndex++),
+                    part.vertexData.getFloat(startIndex++),
+                    1
+            );
+
+            float vertU = part.vertexData.getFloat(startIndex++);
+            float vertV = part.vertexData.getFloat(startIndex++);
+
+            Vector3f normal = new Vector3f(
+                    part.vertexData.getFloat(startIndex++),
+                    part.vertexData.getFloat(startIndex++),
+                    part.vertexData.getFloat(startIndex)
+            );
+
+            fullVert.transform(modelMatrix);
+            normal.transform(normalMatrix);
+
+            consumer.vertex(
+                    fullVert.getX(), fullVert.getY(), fullVert.getZ(),
+                    1f, 1f, 1f, 1f,
+                    vertU, vertV,
+                    0, 0xF000F0,
+                    normal.getX(), normal.getY(), normal.getZ()
+            );
+
+            if (i % 4 == 0)
+                leftToRender -= 4;
+        }
+
+        return leftToRender;
+    }
+
+    @Benchmark
+    public int renderCube() {
+        return part.renderCube(Integer.MAX_VALUE, model, normal, consumer, 0xF000F0, 0, 0f, 0f, 1f, 1f, 1f, 1f);
+    }
+
+    //Rotation around y, without translation
+    private static class Model implements Matrix4fAccessorMixin {
+        private final float cos, sin;
+
+        private Model(float cos, float sin) {
+            this.cos = cos;
+            this.sin = sin;
+        }
+
+        @Override public float getA00() { return cos; }
+        @Override public float getA01() { return 0f; }
+        @Override public float getA02() { return sin; }
+        @Override public float getA03() { return 0f; }
+        @Override public float getA10() { return 0f; }
+        @Override public float getA11() { return 1f; }
+        @Override public float getA12() { return 0f; }
+        @Override public float getA13() { return 0f; }
+        @Override public float getA20() { return -sin; }
+        @Override public float getA21() { return 0f; }
+        @Override public float getA22() { return cos; }
+        @Override public float getA23() { return 0f; }
+    }
+
+    private static class Normal implements Matrix3fAccessorMixin {
+        private final float cos, sin;
+
+        private Normal(float cos, float sin) {
+            this.cos = cos;
+            this.sin = sin;
+        }
+
+        @Override public float getA00() { return cos; }
+        @Override public float getA01() { return 0f; }
+        @Override public float getA02() { return sin; }
+        @Override public float getA10() { return 0f; }
+        @Override public float getA11() { return 1f; }
+        @Override public float getA12() { return 0f; }
+        @Override public float getA20() { return -sin; }
+        @Override public float getA21() { return 0f; }
+        @Override public float getA22() { return cos; }
+    }
+
+    //Hands everything to the blackhole, so the transform can't be optimized away, and allocates nothing itself
+    private static class SinkVertexConsumer implements VertexConsumer {
+        private final Blackhole blackhole;
+
+        private SinkVertexConsumer(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void vertex(float x, float y, float z, float red, float green, float blue, float alpha, float u, float v, int overlay, int light, float normalX, float normalY, float normalZ) {
+            blackhole.consume(x + y + z + u + v + normalX + normalY + normalZ);
+        }
+
+        @Override
+        public VertexConsumer vertex(double x, double y, double z) {
+            blackhole.consume(x + y + z);
+            return this;
+        }
+
+        @Override
+        public VertexConsumer color(int red, int green, int blue, int alpha) {
+            return this;
+        }
+
+        @Override
+        public VertexConsumer texture(float u, float v) {
+            return this;
+        }
+
+        @Override
+        public VertexConsumer overlay(int u, int v) {
+            return this;
+        }
+
+        @Override
+        public VertexConsumer light(int u, int v) {
+            return this;
+        }
+
+        @Override
+        public VertexConsumer normal(float x, float y, float z) {
+            return this;
+        }
+
+        @Override
+        public void next() {
+        }
+    }
+}
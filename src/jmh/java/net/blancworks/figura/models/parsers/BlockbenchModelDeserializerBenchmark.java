@@ -0,0 +1,113 @@
+package net.blancworks.figura.models.parsers;
+
+import com.google.gson.JsonParser;
+import net.blancworks.figura.models.CustomModel;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Base64;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+//Compares loading a Blockbench model through a JSON tree (how models were loaded before) with the stream deserializer.
+//The model is generated, with a fixed seed, and read from memory, so only parsing is measured.
+//Run with: gradlew jmh, the gc profiler is on, so allocations per load show up as gc.alloc.rate.norm.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class BlockbenchModelDeserializerBenchmark {
+    //cubes in the model
+    @Param({"100", "1000"})
+    public int elements;
+
+    //size of the embedded texture, before base64
+    @Param({"65536"})
+    public int textureBytes;
+
+    private String json;
+
+    @Setup
+    public void setup() {
+        json = generateModel(elements, textureBytes, new Random(0));
+    }
+
+    @Benchmark
+    public CustomModel tree() {
+        return new BlockbenchModelDeserializer().deserialize(new JsonParser().parse(json), CustomModel.class, null);
+    }
+
+    @Benchmark
+    public CustomModel stream() throws IOException {
+        return new BlockbenchModelStreamDeserializer().read(new StringReader(json));
+    }
+
+    //Builds a .bbmodel laid out like Blockbench saves it: meta, resolution, elements, outliner, then the textures.
+    //Every 10 cubes are put in a group.
+    private static String generateModel(int elements, int textureBytes, Random random) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("{\"meta\":{\"format_version\":\"3.6\",\"model_format\":\"free\",\"box_uv\":false},");
+        builder.append("\"name\":\"benchmark\",\"resolution\":{\"width\":64,\"height\":64},");
+
+        UUID[] ids = new UUID[elements];
+        builder.append("\"elements\":[");
+        for (int i = 0; i < elements; i++) {
+            ids[i] = new UUID(random.nextLong(), random.nextLong());
+
+            float x = random.nextInt(16) - 8, y = random.nextInt(32), z = random.nextInt(16) - 8;
+            float w = random.nextInt(4) + 1, h = random.nextInt(4) + 1, d = random.nextInt(4) + 1;
+
+            if (i > 0)
+                builder.append(',');
+
+            builder.append("{\"name\":\"cube").append(i).append("\",\"rescale\":false,\"locked\":false,");
+            builder.append("\"from\":[").append(x).append(',').append(y).append(',').append(z).append("],");
+            builder.append("\"to\":[").append(x + w).append(',').append(y + h).append(',').append(z + d).append("],");
+            builder.append("\"autouv\":0,\"color\":").append(i % 8).append(',');
+            builder.append("\"rotation\":[0,").append(random.nextInt(4) * 22.5f).append(",0],");
+            builder.append("\"origin\":[").append(x).append(',').append(y).append(',').append(z).append("],");
+            builder.append("\"faces\":{");
+
+            String[] faces = {"north", "east", "south", "west", "up", "down"};
+            for (int f = 0; f < faces.length; f++) {
+                float u = random.nextInt(60), v = random.nextInt(60);
+
+                if (f > 0)
+                    builder.append(',');
+
+                builder.append('"').append(faces[f]).append("\":{\"uv\":[").append(u).append(',').append(v).append(',').append(u + w).append(',').append(v + h).append("],\"texture\":0}");
+            }
+
+            builder.append("},\"uuid\":\"").append(ids[i]).append("\"}");
+        }
+        builder.append("],");
+
+        builder.append("\"outliner\":[");
+        for (int i = 0; i < elements; i += 10) {
+            if (i > 0)
+                builder.append(',');
+
+            builder.append("{\"name\":\"group").append(i / 10).append("\",\"origin\":[0,0,0],\"uuid\":\"").append(new UUID(random.nextLong(), random.nextLong())).append("\",\"children\":[");
+            for (int j = i; j < Math.min(i + 10, elements); j++) {
+                if (j > i)
+                    builder.append(',');
+
+                builder.append('"').append(ids[j]).append('"');
+            }
+            builder.append("]}");
+        }
+        builder.append("],");
+
+        byte[] texture = new byte[textureBytes];
+        random.nextBytes(texture);
+        builder.append("\"textures\":[{\"name\":\"texture.png\",\"id\":\"0\",\"source\":\"data:image/png;base64,");
+        builder.append(Base64.getEncoder().encodeToString(texture));
+        builder.append("\"}]}");
+
+        return builder.toString();
+    }
+}
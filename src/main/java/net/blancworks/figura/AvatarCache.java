@@ -0,0 +1,380 @@
+package net.blancworks.figura;
+
+import net.blancworks.figura.config.ConfigManager.Config;
+import net.fabricmc.fabric.api.util.NbtType;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.LongTag;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.StringTag;
+import net.minecraft.nbt.Tag;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * On-disk cache for avatars downloaded from the server.
+ * Entries are the compressed avatar NBT, named after the SHA-256 of their contents, so identical avatars are only stored once.
+ * Once the cache grows past {@link Config#AVATAR_CACHE_SIZE} the least recently used entries are deleted.
+ * The index is written at most every few seconds, from {@link #tick()}, instead of on every change.
+ */
+public final class AvatarCache {
+    private static final String INDEX_FILE = "index.nbt";
+    private static final String ENTRY_EXTENSION = ".nbt";
+    //Ticks between index writes
+    private static final int SAVE_INTERVAL = 100;
+
+    //Content hash -> entry size in bytes, iterated from least to most recently used.
+    private static final LinkedHashMap<String, Long> ENTRIES = new LinkedHashMap<>(16, 0.75f, true);
+    //Player -> the server hash and content hash of the last avatar we cached for them.
+    private static final Map<UUID, Record> PLAYERS = new HashMap<>();
+
+    private static long totalSize = 0;
+    private static boolean loaded = false;
+
+    private static volatile boolean dirty = false;
+    private static int lastSaveTick = 0;
+
+    public static Path getCacheDirectory() {
+        return FiguraMod.getModContentDirectory().resolve("cache");
+    }
+
+    /**
+     * Loads the cached avatar of a player into the player data, if it matches the hash the server reported.
+     *
+     * @param id         the player
+     * @param serverHash the hash the server reported for the player's current avatar
+     * @param targetData the player data to load into
+     * @return {@code true} if the avatar was loaded from the cache, otherwise {@code false}
+     */
+    public static boolean tryLoad(UUID id, String serverHash, PlayerData targetData) {
+        if (serverHash == null || serverHash.isEmpty())
+            return false;
+
+        String contentHash;
+        synchronized (AvatarCache.class) {
+            loadIndex();
+
+            Record record = PLAYERS.get(id);
+            if (record == null || !record.serverHash.equals(serverHash) || !ENTRIES.containsKey(record.contentHash))
+                return false;
+
+            //touch the entry, so it's the last to be evicted
+            ENTRIES.get(record.contentHash);
+            contentHash = record.contentHash;
+        }
+
+        try {
+            //entries are never written in place, so they can be read without holding the lock
+            byte[] data = Files.readAllBytes(getEntryPath(contentHash));
+
+            if (!contentHash.equals(hashContent(data))) {
+                remove(contentHash);
+                return false;
+            }
+
+            CompoundTag nbt = NbtIo.readCompressed(new DataInputStream(new ByteArrayInputStream(data)));
+            targetData.loadFromNbt(nbt);
+            targetData.lastHash = serverHash;
+            targetData.setFileSize(data.length);
+
+            FiguraMod.LOGGER.debug("Used cached avatar for " + id);
+            return true;
+        } catch (Exception e) {
+            FiguraMod.LOGGER.warn("Failed to load cached avatar for " + id);
+            remove(contentHash);
+        }
+
+        return false;
+    }
+
+    /**
+     * Stores an avatar in the cache.
+     *
+     * @param id         the player the avatar belongs to
+     * @param serverHash the hash the server reported for this avatar
+     * @param data       the compressed avatar NBT
+     */
+    public static void put(UUID id, String serverHash, byte[] data) {
+        if (serverHash == null || serverHash.isEmpty() || data == null || data.length == 0)
+            return;
+
+        //the cache is disabled, or the avatar alone would be evicted right away
+        if (data.length > getMaxSize())
+            return;
+
+        try {
+            String contentHash = hashContent(data);
+
+            synchronized (AvatarCache.class) {
+                loadIndex();
+
+                if (!ENTRIES.containsKey(contentHash)) {
+                    writeAtomically(getEntryPath(contentHash), data);
+                    ENTRIES.put(contentHash, (long) data.length);
+                    totalSize += data.length;
+                } else {
+                    ENTRIES.get(contentHash);
+                }
+
+                PLAYERS.put(id, new Record(serverHash, contentHash));
+
+                evict();
+                dirty = true;
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    public static void put(UUID id, String serverHash, CompoundTag avatarNbt) {
+        if (getMaxSize() == 0)
+            return;
+
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            NbtIo.writeCompressed(avatarNbt, out);
+            put(id, serverHash, out.toByteArray());
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    public static synchronized void clear() {
+        loadIndex();
+
+        for (String contentHash : new ArrayList<>(ENTRIES.keySet()))
+            deleteEntry(contentHash);
+
+        ENTRIES.clear();
+        PLAYERS.clear();
+        totalSize = 0;
+
+        dirty = false;
+        saveIndex();
+    }
+
+    //Called every client tick, writes the index on the load thread once it changed and the interval passed.
+    public static void tick() {
+        if (!dirty || FiguraMod.ticksElapsed - lastSaveTick < SAVE_INTERVAL)
+            return;
+
+        lastSaveTick = FiguraMod.ticksElapsed;
+        FiguraMod.doTask(AvatarCache::flush);
+    }
+
+    //Writes the index now, if it changed since the last write.
+    public static synchronized void flush() {
+        if (!dirty)
+            return;
+
+        dirty = false;
+        saveIndex();
+    }
+
+    private static synchronized void remove(String contentHash) {
+        Long size = ENTRIES.remove(contentHash);
+        if (size != null)
+            totalSize -= size;
+
+        deleteEntry(contentHash);
+        PLAYERS.values().removeIf(record -> record.contentHash.equals(contentHash));
+
+        dirty = true;
+    }
+
+    //Configured size of the cache in bytes, 0 when it's disabled.
+    private static long getMaxSize() {
+        return Math.max((int) Config.AVATAR_CACHE_SIZE.value, 0) * 1024L * 1024L;
+    }
+
+    //Deletes least recently used entries until the cache fits in the configured size.
+    private static void evict() {
+        long maxSize = getMaxSize();
+
+        Iterator<Map.Entry<String, Long>> iterator = ENTRIES.entrySet().iterator();
+        while (totalSize > maxSize && iterator.hasNext()) {
+            Map.Entry<String, Long> entry = iterator.next();
+            String contentHash = entry.getKey();
+
+            totalSize -= entry.getValue();
+            iterator.remove();
+
+            deleteEntry(contentHash);
+            PLAYERS.values().removeIf(record -> record.contentHash.equals(contentHash));
+        }
+    }
+
+    private static void deleteEntry(String contentHash) {
+        try {
+            Files.deleteIfExists(getEntryPath(contentHash));
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static Path getEntryPath(String contentHash) {
+        return getCacheDirectory().resolve(contentHash + ENTRY_EXTENSION);
+    }
+
+    //Writes to a temporary file first, then moves it into place, so readers never see a half written file.
+    static void writeAtomically(Path path, byte[] data) throws Exception {
+        Files.createDirectories(path.getParent());
+
+        Path tempPath = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+        try {
+            Files.write(tempPath, data);
+
+            try {
+                Files.move(tempPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ignored) {
+                Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+    }
+
+    public static String hashContent(byte[] data) throws Exception {
+        byte[] hashBytes = MessageDigest.getInstance("SHA-256").digest(data);
+
+        StringBuilder builder = new StringBuilder(hashBytes.length * 2);
+        for (byte b : hashBytes)
+            builder.append(String.format("%02x", b));
+
+        return builder.toString();
+    }
+
+    //---------INDEX---------
+
+    private static void loadIndex() {
+        if (loaded)
+            return;
+        loaded = true;
+
+        ENTRIES.clear();
+        PLAYERS.clear();
+        totalSize = 0;
+
+        try {
+            Path indexPath = getCacheDirectory().resolve(INDEX_FILE);
+            if (!Files.exists(indexPath))
+                return;
+
+            CompoundTag nbt;
+            try (InputStream in = Files.newInputStream(indexPath)) {
+                nbt = NbtIo.readCompressed(in);
+            }
+
+            //entries are saved in least recently used order
+            for (Tag element : nbt.getList("entries", NbtType.COMPOUND)) {
+                CompoundTag entry = (CompoundTag) element;
+                String contentHash = entry.getString("hash");
+
+                if (!Files.exists(getEntryPath(contentHash)))
+                    continue;
+
+                long size = entry.getLong("size");
+                ENTRIES.put(contentHash, size);
+                totalSize += size;
+            }
+
+            for (Tag element : nbt.getList("players", NbtType.COMPOUND)) {
+                CompoundTag player = (CompoundTag) element;
+                String contentHash = player.getString("content");
+
+                if (ENTRIES.containsKey(contentHash))
+                    PLAYERS.put(player.getUuid("id"), new Record(player.getString("hash"), contentHash));
+            }
+        } catch (Exception e) {
+            FiguraMod.LOGGER.warn("Avatar cache index is corrupted, starting a new one");
+            e.printStackTrace();
+        }
+
+        deleteUnknownFiles();
+    }
+
+    //Deletes everything in the cache folder the index doesn't know about: leftover temp files, entries written after the last
+    //index write, and the per player files of the old cache layout (cache/<uuid parts>/<uuid end>.nbt and .hsh).
+    private static void deleteUnknownFiles() {
+        Path directory = getCacheDirectory();
+        if (!Files.isDirectory(directory))
+            return;
+
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path path : (Iterable<Path>) files::iterator) {
+                String name = path.getFileName().toString();
+
+                if (Files.isDirectory(path)) {
+                    deleteRecursively(path);
+                } else if (!name.equals(INDEX_FILE) && !(name.endsWith(ENTRY_EXTENSION) && ENTRIES.containsKey(name.substring(0, name.length() - ENTRY_EXTENSION.length())))) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void deleteRecursively(Path directory) throws Exception {
+        List<Path> paths = new ArrayList<>();
+        try (Stream<Path> walk = Files.walk(directory)) {
+            walk.forEach(paths::add);
+        }
+
+        //children first
+        Collections.reverse(paths);
+        for (Path path : paths)
+            Files.deleteIfExists(path);
+    }
+
+    private static void saveIndex() {
+        try {
+            CompoundTag nbt = new CompoundTag();
+
+            ListTag entryList = new ListTag();
+            ENTRIES.forEach((contentHash, size) -> {
+                CompoundTag entry = new CompoundTag();
+                entry.put("hash", StringTag.of(contentHash));
+                entry.put("size", LongTag.of(size));
+                entryList.add(entry);
+            });
+            nbt.put("entries", entryList);
+
+            ListTag playerList = new ListTag();
+            PLAYERS.forEach((id, record) -> {
+                CompoundTag player = new CompoundTag();
+                player.putUuid("id", id);
+                player.put("hash", StringTag.of(record.serverHash));
+                player.put("content", StringTag.of(record.contentHash));
+                playerList.add(player);
+            });
+            nbt.put("players", playerList);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            NbtIo.writeCompressed(nbt, out);
+            writeAtomically(getCacheDirectory().resolve(INDEX_FILE), out.toByteArray());
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static class Record {
+        public final String serverHash;
+        public final String contentHash;
+
+        public Record(String serverHash, String contentHash) {
+            this.serverHash = serverHash;
+            this.contentHash = contentHash;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package net.blancworks.figura;
+
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.Tag;
+import org.apache.commons.io.output.NullOutputStream;
+
+import java.io.DataOutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Splits an avatar into its sections (model, texture, script, sounds and extra textures) and hashes each one,
+ * so an updated avatar only reloads the sections that actually changed.
+ */
+public final class AvatarSections {
+    //Bumped whenever the sections or how they're hashed change, so hashes from different versions never match.
+    public static final int FORMAT_VERSION = 1;
+
+    public static final String MODEL = "model";
+    public static final String TEXTURE = "texture";
+    public static final String SCRIPT = "script";
+    public static final String SOUNDS = "sounds";
+    public static final String EXTRA_TEXTURES = "exTexs";
+
+    private static final String[] SECTIONS = {MODEL, TEXTURE, SCRIPT, SOUNDS, EXTRA_TEXTURES};
+
+    /**
+     * Hashes every section present in the avatar NBT.
+     *
+     * @param avatarNbt the avatar, as written by {@link PlayerData#writeNbt}
+     * @return section name -> hash of its contents, missing sections are left out
+     */
+    public static Map<String, String> hashSections(CompoundTag avatarNbt) {
+        Map<String, String> hashes = new HashMap<>();
+
+        for (String section : SECTIONS) {
+            Tag tag = avatarNbt.get(section);
+            if (tag == null)
+                continue;
+
+            try {
+                hashes.put(section, hashTag(tag));
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+
+        return hashes;
+    }
+
+    //Hashes the binary NBT of the tag as it's written, without keeping the written bytes around.
+    private static String hashTag(Tag tag) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+
+        try (DataOutputStream out = new DataOutputStream(new DigestOutputStream(NullOutputStream.NULL_OUTPUT_STREAM, digest))) {
+            out.writeInt(FORMAT_VERSION);
+            out.writeByte(tag.getType());
+            tag.write(out);
+        }
+
+        byte[] hashBytes = digest.digest();
+        StringBuilder builder = new StringBuilder(hashBytes.length * 2);
+        for (byte b : hashBytes)
+            builder.append(String.format("%02x", b));
+
+        return builder.toString();
+    }
+
+    //Returns true if the section has the same contents in both avatars, and is present in them.
+    public static boolean isUnchanged(String section, Map<String, String> oldHashes, Map<String, String> newHashes) {
+        String oldHash = oldHashes.get(section);
+        return oldHash != null && oldHash.equals(newHashes.get(section));
+    }
+}
@@ -14,6 +14,7 @@ import net.blancworks.figura.lua.api.sound.FiguraSoundManager;
 import net.blancworks.figura.network.IFiguraNetwork;
 import net.blancworks.figura.network.NewFiguraNetworkManager;
 import net.blancworks.figura.trust.PlayerTrustManager;
+import net.blancworks.figura.utils.TextMeshCache;
 import net.fabricmc.api.ClientModInitializer;
 import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientLifecycleEvents;
 import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientTickEvents;
@@ -175,7 +176,10 @@ public class FiguraMod implements ClientModInitializer {
         //Register fabric events
         ClientTickEvents.END_CLIENT_TICK.register(FiguraMod::ClientEndTick);
         WorldRenderEvents.AFTER_ENTITIES.register(FiguraMod::renderFirstPersonWorldParts);
-        ClientLifecycleEvents.CLIENT_STOPPING.register((v) -> networkManager.onClose());
+        ClientLifecycleEvents.CLIENT_STOPPING.register((v) -> {
+            networkManager.onClose();
+            AvatarCache.flush();
+        });
 
         ResourceManagerHelper.get(ResourceType.CLIENT_RESOURCES).registerReloadListener(new SimpleSynchronousResourceReloadListener() {
             @Override
@@ -186,6 +190,7 @@ public class FiguraMod implements ClientModInitializer {
             @Override
             public void apply(ResourceManager manager) {
                 PlayerDataManager.reloadAllTextures();
+                TextMeshCache.clear();
 
                 try {
                     cheese = NbtIo.readCompressed(manager.getResource(new Identifier("figura", "cheese/cheese.nbt")).getInputStream());
@@ -204,6 +209,7 @@ public class FiguraMod implements ClientModInitializer {
         try {
             PlayerDataManager.tick();
             FiguraSoundManager.tick();
+            AvatarCache.tick();
 
             networkManager = newNetworkManager;
 
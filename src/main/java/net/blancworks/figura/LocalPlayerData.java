@@ -9,12 +9,17 @@ import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
 import net.blancworks.figura.lua.CustomScript;
 import net.blancworks.figura.models.CustomModel;
 import net.blancworks.figura.models.FiguraTexture;
-import net.blancworks.figura.models.parsers.BlockbenchModelDeserializer;
+import net.blancworks.figura.models.parsers.BlockbenchModelStreamDeserializer;
+import net.blancworks.figura.lua.api.sound.FiguraSound;
 import net.blancworks.figura.lua.api.sound.FiguraSoundManager;
 import net.minecraft.util.Identifier;
 import org.apache.commons.io.IOUtils;
 
 import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -33,6 +38,11 @@ public class LocalPlayerData extends PlayerData {
     public String loadedPath;
     private final Map<String, WatchKey> watchKeys = new Object2ObjectOpenHashMap<>();
     private final Set<String> watchedFiles = new HashSet<>();
+    //Files changed since the last reload, applied once no more changes came in for RELOAD_DELAY ticks
+    private final Set<String> changedFiles = new HashSet<>();
+    private int reloadDelay = 0;
+    public static final int RELOAD_DELAY = 10;
+    private static final String OVERFLOW_MARKER = "";
     public static WatchService ws;
 
     static {
@@ -65,14 +75,20 @@ public class LocalPlayerData extends PlayerData {
         //clear current data
         this.model = null;
         this.texture = null;
+        if (this.script != null)
+            this.script.clearTasks();
         this.script = null;
 
         watchedFiles.clear();
+        changedFiles.clear();
         clearData();
+        invalidateFileSize();
 
         if (path == null || path.equals(""))
             return;
 
+        loadState = LoadState.LOADING;
+
         //avatar file
         File file = new File(path);
 
@@ -197,56 +213,55 @@ public class LocalPlayerData extends PlayerData {
     }
 
     public void loadModel(boolean model, HashMap<String, Path> paths, boolean isZip, ZipFile modelZip) {
-        InputStream inputStream = null;
-
-        try {
-            //get input stream, either from zip, or directory
-            if (isZip) {
-                ZipEntry modelEntry;
-                if (model)
-                    modelEntry = modelZip.getEntry("model.bbmodel");
-                else {
-                    modelEntry = modelZip.getEntry("player_model.bbmodel");
-                    BlockbenchModelDeserializer.overrideAsPlayerModel = true;
-                }
-
-                inputStream = modelZip.getInputStream(modelEntry);
-            } else {
-                if (model)
-                    inputStream = new FileInputStream(paths.get("model").toFile());
-                else {
-                    inputStream = new FileInputStream(paths.get("player_model").toFile());
-                    BlockbenchModelDeserializer.overrideAsPlayerModel = true;
-                }
+        String entryName = model ? "model.bbmodel" : "player_model.bbmodel";
+        //the zip is closed once the avatar is loaded, so the task opens its own
+        String zipPath = isZip ? modelZip.getName() : null;
+        Path modelPath = isZip ? null : paths.get(model ? "model" : "player_model");
+
+        //Stream the model in off-thread, the file is never read into memory as a whole.
+        FiguraMod.doTask(() -> {
+            long startTime = System.nanoTime();
+            long startAllocated = getThreadAllocatedBytes();
+
+            try (ZipFile zip = isZip ? new ZipFile(zipPath) : null;
+                 InputStream inputStream = isZip ? zip.getInputStream(zip.getEntry(entryName)) : new FileInputStream(modelPath.toFile());
+                 Reader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
+                CustomModel newModel = new BlockbenchModelStreamDeserializer(!model).read(reader);
+                newModel.owner = this;
+                newModel.isDone = true;
+                this.model = newModel;
+
+                long allocated = getThreadAllocatedBytes() - startAllocated;
+                FiguraMod.LOGGER.info("Model Loading Finished in " + (System.nanoTime() - startTime) / 1000000 + "ms" + (startAllocated >= 0 ? ", allocated " + allocated / 1024 + "KB" : ""));
+            } catch (Exception e) {
+                e.printStackTrace();
             }
+        });
+    }
 
-            //Try to read from input stream
-            String modelJsonText;
-            try (final Reader reader = new InputStreamReader(inputStream)) {
-                modelJsonText = CharStreams.toString(reader);
-            }
+    //com.sun.management isn't on every JVM, so the method is looked up by name, null when missing
+    private static final Method GET_THREAD_ALLOCATED_BYTES = findThreadAllocatedBytes();
 
-            //Finalize string for lambda
-            String finalModelJsonText = modelJsonText;
-            //Load model from GSON in off-thread.
-            FiguraMod.doTask(() -> {
-                this.model = FiguraMod.GSON.fromJson(finalModelJsonText, CustomModel.class);
-                this.model.owner = this;
-                this.model.isDone = true;
-                FiguraMod.LOGGER.info("Model Loading Finished");
-            });
-        } catch (Exception e) {
-            e.printStackTrace();
+    private static Method findThreadAllocatedBytes() {
+        try {
+            return Class.forName("com.sun.management.ThreadMXBean").getMethod("getThreadAllocatedBytes", long.class);
+        } catch (Throwable ignored) {
+            return null;
         }
+    }
 
-        //Close previously used stream, regardless of what it was (zip or filestream)
-        if (inputStream != null) {
-            try {
-                inputStream.close();
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-        }
+    //Bytes allocated by the current thread so far, or -1 if the JVM can't tell.
+    private static long getThreadAllocatedBytes() {
+        if (GET_THREAD_ALLOCATED_BYTES == null)
+            return -1;
+
+        try {
+            ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if (GET_THREAD_ALLOCATED_BYTES.getDeclaringClass().isInstance(bean))
+                return (long) GET_THREAD_ALLOCATED_BYTES.invoke(bean, Thread.currentThread().getId());
+        } catch (Throwable ignored) {}
+
+        return -1;
     }
 
     public void loadTexture(Path texturePath, boolean isZip, ZipFile modelZip) {
@@ -391,21 +406,16 @@ public class LocalPlayerData extends PlayerData {
     }
 
     public void tickFileWatchers() {
-
-        boolean doReload = false;
-
         for (Map.Entry<String, WatchKey> entry : watchKeys.entrySet()) {
             WatchKey key = watchKeys.get(entry.getKey());
 
             for (WatchEvent<?> event : key.pollEvents()) {
                 WatchEvent.Kind<?> kind = event.kind();
 
-                // This key is registered only
-                // for ENTRY_CREATE events,
-                // but an OVERFLOW event can
-                // occur regardless if events
-                // are lost or discarded.
+                //events were lost, so we don't know what changed
                 if (kind == StandardWatchEventKinds.OVERFLOW) {
+                    changedFiles.add(OVERFLOW_MARKER);
+                    reloadDelay = RELOAD_DELAY;
                     continue;
                 }
 
@@ -417,15 +427,104 @@ public class LocalPlayerData extends PlayerData {
                 String realName = child.getFileName().toString();
 
                 try {
-                    if (watchedFiles.contains(child.toString()) || realName.equals(loadedName))
-                        doReload = true;
+                    if (watchedFiles.contains(child.toString()) || realName.equals(loadedName)) {
+                        changedFiles.add(child.toString());
+                        //editors often write a file several times per save, so wait until it settles
+                        reloadDelay = RELOAD_DELAY;
+                    }
                 } catch (Exception e) {
                     e.printStackTrace();
                 }
             }
         }
 
-        if (doReload) reloadAvatar();
+        if (changedFiles.isEmpty() || --reloadDelay > 0)
+            return;
+
+        Set<String> changed = new HashSet<>(changedFiles);
+        changedFiles.clear();
+        reloadChangedFiles(changed);
+    }
+
+    //Reloads only the parts of the avatar that changed, falling back to a full reload when that isn't possible.
+    private void reloadChangedFiles(Set<String> changed) {
+        if (loadedPath == null || loadedPath.endsWith(".zip") || changed.contains(OVERFLOW_MARKER)) {
+            reloadAvatar();
+            return;
+        }
+
+        Path contentDirectory = Paths.get(loadedPath);
+        Path modelPath = contentDirectory.resolve("model.bbmodel");
+        Path playerModelPath = contentDirectory.resolve("player_model.bbmodel");
+        Path texturePath = contentDirectory.resolve("texture.png");
+        Path scriptPath = contentDirectory.resolve("script.lua");
+
+        boolean modelChanged = changed.remove(modelPath.toString()) | changed.remove(playerModelPath.toString());
+        boolean textureChanged = changed.remove(texturePath.toString());
+        boolean scriptChanged = changed.remove(scriptPath.toString());
+
+        //extra textures are reloaded in place
+        for (FiguraTexture extraTexture : extraTextures) {
+            if (extraTexture.filePath != null && changed.remove(extraTexture.filePath.toString()))
+                reloadTexture(extraTexture, extraTexture.filePath);
+        }
+
+        //sounds, or files that weren't loaded before, need everything to be set up again
+        if (!changed.isEmpty() || (textureChanged && this.texture == null) || (modelChanged && this.model == null)) {
+            reloadAvatar();
+            return;
+        }
+
+        if (textureChanged)
+            reloadTexture(this.texture, texturePath);
+
+        if (modelChanged) {
+            HashMap<String, Path> avatarPaths = new HashMap<>();
+            avatarPaths.put("model", modelPath);
+            avatarPaths.put("player_model", playerModelPath);
+
+            //the old model keeps rendering until the new one is parsed
+            loadModel(Files.exists(modelPath), avatarPaths, false, null);
+        }
+
+        //the script's part tables point at the old model parts, so a new model also needs a new script
+        if (scriptChanged || modelChanged)
+            reloadScript(scriptPath);
+
+        invalidateFileSize();
+        FiguraMod.LOGGER.info("Reloaded " + (modelChanged ? "model " : "") + (textureChanged ? "texture " : "") + (scriptChanged ? "script " : "") + "of " + loadedName);
+    }
+
+    private void reloadTexture(FiguraTexture texture, Path texturePath) {
+        try {
+            texture.loadFromStream(new FileInputStream(texturePath.toFile()));
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void reloadScript(Path scriptPath) {
+        CustomScript oldScript = this.script;
+        Map<String, FiguraSound> sounds = new HashMap<>();
+
+        if (oldScript != null) {
+            oldScript.clearTasks();
+            oldScript.clearPings();
+            oldScript.clearRenderTasks();
+
+            //the sounds didn't change, so hand them over instead of decoding them again
+            FiguraSoundManager.getChannel().stopSound(playerId);
+            sounds.putAll(oldScript.customSounds);
+            oldScript.customSounds.clear();
+        }
+
+        this.script = null;
+        loadScript(scriptPath, false, null);
+
+        if (this.script != null)
+            this.script.customSounds.putAll(sounds);
+        else
+            sounds.values().forEach(FiguraSound::close);
     }
 
     public void reloadAvatar() {
@@ -3,6 +3,7 @@ package net.blancworks.figura;
 import net.blancworks.figura.lua.CustomScript;
 import net.blancworks.figura.models.CustomModel;
 import net.blancworks.figura.models.FiguraTexture;
+import net.blancworks.figura.lua.api.sound.FiguraSound;
 import net.blancworks.figura.lua.api.sound.FiguraSoundManager;
 import net.blancworks.figura.network.NewFiguraNetworkManager;
 import net.blancworks.figura.trust.PlayerTrustManager;
@@ -25,12 +26,11 @@ import net.minecraft.util.Identifier;
 import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
-import java.io.FileOutputStream;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.UUID;
 
 /**
@@ -57,13 +57,22 @@ public class PlayerData {
 
     public PlayerEntity lastEntity;
     public PlayerListEntry playerListEntry;
+    //Where this avatar sorts in the frame's render budget, see AvatarRenderBudget.
+    public double budgetPriority = 0;
 
     //The last hash code of the avatar.
     public String lastHash = "";
     //True if the model needs to be re-loaded due to a hash mismatch.
     public boolean isInvalidated = false;
+    //Where this data is in its lifecycle, written from network and loading threads, read from render.
+    public volatile LoadState loadState = LoadState.REQUESTED;
+    //Hashes of the sections of the last avatar read from NBT, see AvatarSections.
+    private Map<String, String> sectionHashes = new HashMap<>();
 
     private Identifier trustIdentifier;
+    //looked up again only after trust changed, as loading trust settings can replace the container
+    private TrustContainer trustContainer;
+    private int trustVersion = -1;
 
     public Text playerName;
 
@@ -71,6 +80,12 @@ public class PlayerData {
 
     public boolean hasPopup = false;
 
+    //Compressed size of the avatar, -1 when it has to be computed again.
+    private long fileSize = -1;
+    //Avatar hash the file size belongs to, avatars from the server are sized once per hash.
+    //Local avatars have no hash, they invalidate the size whenever they reload.
+    private String fileSizeHash;
+
     public static final int FILESIZE_WARNING_THRESHOLD = 76800;
     public static final int FILESIZE_LARGE_THRESHOLD = 102400;
 
@@ -153,20 +168,60 @@ public class PlayerData {
      */
     public void readNbt(CompoundTag nbt) {
         if (!nbt.contains("id")) return;
-        playerId = nbt.getUuid("id");
+        //offline players keep their own UUID when loaded with the avatar of their online one
+        if (playerId == null)
+            playerId = nbt.getUuid("id");
+
+        if (loadState != LoadState.EVICTED)
+            loadState = LoadState.LOADING;
+
+        invalidateFileSize();
+
+        //sections that didn't change since the last avatar are kept as they are, instead of being loaded again
+        //hashing serializes every section, so the first avatar of a player isn't hashed, only avatars replacing one are,
+        //as those are the ones that get updated again
+        boolean hasAvatar = model != null || texture != null || script != null || !extraTextures.isEmpty();
+        Map<String, String> newHashes = hasAvatar ? AvatarSections.hashSections(nbt) : new HashMap<>();
+        boolean keepModel = model != null && AvatarSections.isUnchanged(AvatarSections.MODEL, sectionHashes, newHashes);
+        boolean keepTexture = texture != null && AvatarSections.isUnchanged(AvatarSections.TEXTURE, sectionHashes, newHashes);
+        boolean keepExtraTextures = !extraTextures.isEmpty() && AvatarSections.isUnchanged(AvatarSections.EXTRA_TEXTURES, sectionHashes, newHashes);
+        boolean keepSounds = script != null && AvatarSections.isUnchanged(AvatarSections.SOUNDS, sectionHashes, newHashes);
+        //the script's part tables point at the parts of the model it was loaded with
+        boolean keepScript = keepModel && script != null && AvatarSections.isUnchanged(AvatarSections.SCRIPT, sectionHashes, newHashes)
+                && Objects.equals(sectionHashes.get(AvatarSections.SOUNDS), newHashes.get(AvatarSections.SOUNDS));
+        sectionHashes = newHashes;
+
+        Map<String, FiguraSound> keptSounds = new HashMap<>();
+        if (!keepScript && script != null) {
+            script.clearTasks();
+            script.clearPings();
+            script.clearRenderTasks();
+
+            if (keepSounds) {
+                //hand the decoded sounds over to the new script
+                FiguraSoundManager.getChannel().stopSound(playerId);
+                keptSounds.putAll(script.customSounds);
+                script.customSounds.clear();
+            } else {
+                script.clearSounds();
+            }
+        }
 
-        model = null;
-        texture = null;
-        script = null;
-
-        extraTextures.clear();
+        if (!keepModel)
+            model = null;
+        if (!keepTexture)
+            texture = null;
+        if (!keepScript)
+            script = null;
+        if (!keepExtraTextures)
+            extraTextures.clear();
 
         try {
             //Create model on main thread.
             CompoundTag modelNbt = (CompoundTag) nbt.get("model");
 
             //Load model on off-thread.
-            if (modelNbt != null) {
+            if (modelNbt != null && !keepModel) {
                 FiguraMod.doTask(() -> {
                     try {
                         model = new CustomModel();
@@ -188,7 +243,7 @@ public class PlayerData {
             CompoundTag textureNbt = (CompoundTag) nbt.get("texture");
 
             //Load texture, if any
-            if (textureNbt != null) {
+            if (textureNbt != null && !keepTexture) {
                 texture = new FiguraTexture();
                 texture.id = new Identifier("figura", playerId.toString());
                 getTextureManager().registerTexture(texture.id, texture);
@@ -199,15 +254,16 @@ public class PlayerData {
         }
 
         try {
-            if (nbt.contains("script")) {
+            if (nbt.contains("script") && !keepScript) {
                 CompoundTag scriptNbt = (CompoundTag) nbt.get("script");
 
                 if (scriptNbt != null) FiguraMod.doTask(() -> {
                     script = new CustomScript();
+                    script.customSounds.putAll(keptSounds);
                     script.fromNBT(this, scriptNbt);
 
                     try {
-                        if (nbt.contains("sounds")) {
+                        if (keptSounds.isEmpty() && nbt.contains("sounds")) {
                             readCustomSoundsNBT(nbt.getCompound("sounds"));
                         }
                     } catch (Exception e) {
@@ -220,7 +276,7 @@ public class PlayerData {
         }
 
         try {
-            if (nbt.contains("exTexs")) {
+            if (nbt.contains("exTexs") && !keepExtraTextures) {
                 ListTag textureList = (ListTag) nbt.get("exTexs");
 
                 if (textureList != null) {
@@ -241,6 +297,33 @@ public class PlayerData {
 
     //Returns the file size, in bytes.
     public long getFileSize() {
+        if (this.fileSize >= 0 && (this.isLocalAvatar || Objects.equals(this.fileSizeHash, this.lastHash)))
+            return this.fileSize;
+
+        long size = computeFileSize();
+
+        //only keep it once everything is loaded, otherwise we'd be caching the size of half an avatar
+        if (isAvatarLoaded()) {
+            this.fileSize = size;
+            this.fileSizeHash = this.lastHash;
+        }
+
+        return size;
+    }
+
+    //Sets the file size to an already known value, like the size of the data we got from the server.
+    //Set it after lastHash, it's kept for that hash.
+    public void setFileSize(long fileSize) {
+        this.fileSize = fileSize;
+        this.fileSizeHash = this.lastHash;
+    }
+
+    public void invalidateFileSize() {
+        this.fileSize = -1;
+        this.fileSizeHash = null;
+    }
+
+    private long computeFileSize() {
         CompoundTag writtenNbt = new CompoundTag();
         this.writeNbt(writtenNbt);
 
@@ -261,7 +344,11 @@ public class PlayerData {
             return;
 
         if (this.isInvalidated)
-            PlayerDataManager.clearPlayer(playerId);
+            PlayerDataManager.refreshPlayer(this);
+
+        //the avatar is read over several tasks, it's only ready once all of them are done
+        if (loadState == LoadState.LOADING && isAvatarLoaded())
+            loadState = LoadState.READY;
 
         vanillaModel = ((PlayerEntityRenderer) MinecraftClient.getInstance().getEntityRenderDispatcher().getRenderer(MinecraftClient.getInstance().player)).getModel();
         lastEntity = MinecraftClient.getInstance().world != null ? MinecraftClient.getInstance().world.getPlayerByUuid(this.playerId) : null;
@@ -291,40 +378,28 @@ public class PlayerData {
 
     public void loadFromNbt(CompoundTag tag) {
         this.readNbt(tag);
-        getFileSize();
     }
 
     public TrustContainer getTrustContainer() {
-        return PlayerTrustManager.getContainer(getTrustIdentifier());
+        int version = PlayerTrustManager.getVersion();
+        TrustContainer container = this.trustContainer;
+
+        if (container == null || trustVersion != version) {
+            container = PlayerTrustManager.getContainer(getTrustIdentifier());
+            this.trustContainer = container;
+            this.trustVersion = version;
+        }
+
+        return container;
     }
 
     //Saves this playerdata to the cache.
     public void saveToCache() {
         //We run this as a task to make sure all the previous load operations are done (since those are all also tasks)
         FiguraMod.doTask(() -> {
-            Path destinationPath = FiguraMod.getModContentDirectory().resolve("cache");
-
-            String[] splitID = this.playerId.toString().split("-");
-
-            for (int i = 0; i < splitID.length; i++) {
-                if (i != splitID.length - 1)
-                    destinationPath = destinationPath.resolve(splitID[i]);
-            }
-
-            Path nbtFilePath = destinationPath.resolve(splitID[splitID.length - 1] + ".nbt");
-            Path hashFilePath = destinationPath.resolve(splitID[splitID.length - 1] + ".hsh");
-
-            try {
-                CompoundTag targetTag = new CompoundTag();
-                this.writeNbt(targetTag);
-
-                if (!Files.exists(nbtFilePath.getParent()))
-                    Files.createDirectories(nbtFilePath.getParent());
-                NbtIo.writeCompressed(targetTag, new FileOutputStream(nbtFilePath.toFile()));
-                Files.write(hashFilePath, this.lastHash.getBytes(StandardCharsets.UTF_8));
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
+            CompoundTag targetTag = new CompoundTag();
+            if (this.writeNbt(targetTag))
+                AvatarCache.put(this.playerId, this.lastHash, targetTag);
         });
     }
 
@@ -332,6 +407,11 @@ public class PlayerData {
         return model != null || script != null;
     }
 
+    //True while the player is rendered with the vanilla model instead of the avatar, see CustomModel#startEntityRender.
+    public boolean isVanillaFallback() {
+        return model != null && model.isVanillaFallback();
+    }
+
     public boolean isAvatarLoaded() {
         return (model == null || model.isDone) && (script == null || script.isDone) && (texture == null || texture.isDone);
     }
@@ -352,12 +432,25 @@ public class PlayerData {
 
     public void clearData() {
         extraTextures.clear();
+        sectionHashes.clear();
 
         if (script != null) {
             script.clearSounds();
             script.clearPings();
+            script.clearRenderTasks();
         } else {
             FiguraSoundManager.getChannel().stopSound(playerId);
         }
     }
+
+    public enum LoadState {
+        //Created, waiting on the server for the avatar hash or data.
+        REQUESTED,
+        //Avatar data arrived and is being read.
+        LOADING,
+        //Avatar is fully loaded, or the player has none.
+        READY,
+        //Removed from the PlayerDataManager, late network and loading results for it are dropped.
+        EVICTED
+    }
 }
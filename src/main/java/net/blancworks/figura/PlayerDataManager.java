@@ -1,31 +1,38 @@
 package net.blancworks.figura;
 
-import com.mojang.authlib.GameProfile;
 import net.blancworks.figura.lua.api.sound.FiguraSoundManager;
-import net.minecraft.block.entity.SkullBlockEntity;
 import net.minecraft.client.MinecraftClient;
 import net.minecraft.client.network.PlayerListEntry;
 import net.minecraft.client.render.entity.PlayerEntityRenderer;
 import net.minecraft.text.LiteralText;
 
-import java.io.DataInputStream;
-import java.io.FileInputStream;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
+//Player data is read from render, and added or removed from the client, network and loading threads.
+//Everything here is concurrent, so reads never lock, and a player's data is only ever created (and loaded) once.
+//Removed data is marked as evicted, so results arriving for it late are dropped instead of bringing it back.
 public final class PlayerDataManager {
     public static boolean didInitLocalPlayer = false;
-    public static final Map<UUID, PlayerData> LOADED_PLAYER_DATA = new HashMap<>();
-    public static final Map<UUID, UUID> OFFLINE_SWAP_DATA = new HashMap<>();
+    public static final Map<UUID, PlayerData> LOADED_PLAYER_DATA = new ConcurrentHashMap<>();
+    //Offline UUID -> online UUID the avatar of the player is fetched with.
+    public static final Map<UUID, UUID> OFFLINE_SWAP_DATA = new ConcurrentHashMap<>();
+    //Avatars being downloaded -> the data they're loaded into, which isn't registered under that UUID for offline players.
+    private static final Map<UUID, PendingDownload> PENDING_DOWNLOADS = new ConcurrentHashMap<>();
 
     //Players that we're currently queued up to grab data for.
-    private static final Set<UUID> SERVER_REQUESTED_PLAYERS = new HashSet<>();
-    private static final List<UUID> TO_CLEAR = new ArrayList<>();
+    private static final Set<UUID> SERVER_REQUESTED_PLAYERS = ConcurrentHashMap.newKeySet();
+    private static final Set<UUID> TO_CLEAR = ConcurrentHashMap.newKeySet();
 
     //Hash checking stuff
-    public static final Queue<UUID> TO_REFRESH = new ArrayDeque<>();
-    public static final Set<UUID> TO_REFRESH_SET = new HashSet<>();
+    public static final Queue<UUID> TO_REFRESH = new ConcurrentLinkedQueue<>();
+    public static final Set<UUID> TO_REFRESH_SET = ConcurrentHashMap.newKeySet();
+
+    //Loads waiting on the server to tell us the hash of an avatar, before checking the cache.
+    private static final Map<UUID, PendingHashCheck> PENDING_HASH_CHECKS = new HashMap<>();
+    //Ticks to wait for a hash before giving up on the cache and downloading the avatar.
+    private static final int HASH_CHECK_TIMEOUT = 100;
 
     public static LocalPlayerData localPlayer;
 
@@ -34,16 +41,7 @@ public final class PlayerDataManager {
     public static boolean panic = false;
 
     public static PlayerData getDataForPlayer(UUID id) {
-        if (panic) return null;
-
-        if (OFFLINE_SWAP_DATA.containsKey(id)) {
-            PlayerData data = LOADED_PLAYER_DATA.get(OFFLINE_SWAP_DATA.get(id));
-            if (data != null) {
-                data.playerId = id;
-                LOADED_PLAYER_DATA.put(id, data);
-                OFFLINE_SWAP_DATA.remove(id);
-            }
-        }
+        if (panic || id == null) return null;
 
         MinecraftClient client = MinecraftClient.getInstance();
         if (client.player != null && id == client.player.getUuid()) {
@@ -72,31 +70,17 @@ public final class PlayerDataManager {
             return localPlayer;
         }
 
-        PlayerData getData;
-        if (!LOADED_PLAYER_DATA.containsKey(id)) {
-            getData = new PlayerData();
-            getData.playerId = id;
+        PlayerData getData = LOADED_PLAYER_DATA.get(id);
+        if (getData == null) {
+            PlayerData created = new PlayerData();
+            created.playerId = id;
 
-            if (client.getNetworkHandler() != null) {
-                PlayerListEntry playerEntry = client.getNetworkHandler().getPlayerListEntry(id);
-                if (playerEntry != null && playerEntry.getProfile() != null) {
-                    String name = playerEntry.getProfile().getName();
-                    if (!name.equals("")) {
-                        GameProfile gameProfile = new GameProfile(null, name);
-                        GameProfile newID = SkullBlockEntity.loadProperties(gameProfile);
-                        if (newID != null && id.compareTo(newID.getId()) != 0) {
-                            getPlayerAvatarFromServerOrCache(newID.getId(), getData);
-                            OFFLINE_SWAP_DATA.put(id, newID.getId());
-                        }
-                    }
-                }
+            //someone else might have created it in the meantime, only the one that got it in starts loading it
+            getData = LOADED_PLAYER_DATA.putIfAbsent(id, created);
+            if (getData == null) {
+                getData = created;
+                requestAvatar(client, id, created);
             }
-
-            getPlayerAvatarFromServerOrCache(id, getData);
-
-            LOADED_PLAYER_DATA.put(id, getData);
-        } else {
-            getData = LOADED_PLAYER_DATA.get(id);
         }
 
         if (getData != null) {
@@ -114,21 +98,60 @@ public final class PlayerDataManager {
         return getData;
     }
 
+    //Gets the data of a player without creating it, null if there's none or it was removed.
+    //Used from network callbacks, which must never bring back data that was cleared meanwhile.
+    public static PlayerData getLoadedData(UUID id) {
+        if (panic || id == null) return null;
+
+        PlayerData data = LOADED_PLAYER_DATA.get(id);
+        return data != null && data.loadState != PlayerData.LoadState.EVICTED ? data : null;
+    }
+
+    //Gets the download of an avatar that arrived, null if it's no longer wanted.
+    public static PendingDownload takeDownload(UUID id) {
+        PendingDownload download = PENDING_DOWNLOADS.remove(id);
+        if (download == null) {
+            PlayerData data = getLoadedData(id);
+            return data != null ? new PendingDownload(data, null) : null;
+        }
+
+        return download.targetData.loadState != PlayerData.LoadState.EVICTED ? download : null;
+    }
+
+    //Starts loading the avatar of newly created data.
+    private static void requestAvatar(MinecraftClient client, UUID id, PlayerData data) {
+        if (client.getNetworkHandler() != null) {
+            PlayerListEntry playerEntry = client.getNetworkHandler().getPlayerListEntry(id);
+            if (playerEntry != null && playerEntry.getProfile() != null) {
+                String name = playerEntry.getProfile().getName();
+                if (!name.equals("")) {
+                    //the data is used as is until the lookup is done, then gets the avatar of the online UUID loaded into it
+                    ProfileResolver.resolve(name).thenAccept(newID -> client.execute(() -> {
+                        if (newID != null && id.compareTo(newID) != 0 && LOADED_PLAYER_DATA.get(id) == data) {
+                            OFFLINE_SWAP_DATA.put(id, newID);
+                            getPlayerAvatarFromServerOrCache(newID, data);
+                        }
+                    }));
+                }
+            }
+        }
+
+        getPlayerAvatarFromServerOrCache(id, data);
+    }
+
     //Attempts to get the data for a player from the server.
     public static void getPlayerAvatarFromServerOrCache(UUID id, PlayerData targetData) {
         //Prevent this from running more than once at a time per player.
-        if (SERVER_REQUESTED_PLAYERS.contains(id))
+        if (!SERVER_REQUESTED_PLAYERS.add(id))
             return;
-        SERVER_REQUESTED_PLAYERS.add(id);
 
         FiguraMod.doTask(() -> {
-
             try {
-                //TODO - Re-enable cache
-                    //Attempt to load from cache first.
-                    //attemptCacheLoad(id, targetData);
-                    //If cache load fails or is invalid, load from server.
-                    loadFromNetwork(id, targetData);
+                //Ask the server for the hash of the avatar first, the cache is checked when it arrives.
+                synchronized (PENDING_HASH_CHECKS) {
+                    PENDING_HASH_CHECKS.put(id, new PendingHashCheck(targetData, FiguraMod.ticksElapsed));
+                }
+                FiguraMod.networkManager.checkAvatarHash(id, targetData.lastHash);
             } catch (Exception e){
                 e.printStackTrace();
             }
@@ -137,41 +160,73 @@ public final class PlayerDataManager {
         });
     }
 
-    //Loads the model out of the local cache, if the file for that exists.
-    public static void attemptCacheLoad(UUID id, PlayerData targetData) {
-        Path destinationPath = FiguraMod.getModContentDirectory().resolve("cache");
+    //Called when the server reports the hash of the avatar of a player.
+    //Returns true if the hash was requested by a load, in which case the avatar is loaded from the cache or the server.
+    public static boolean onAvatarHashReceived(UUID id, String hash) {
+        PendingHashCheck check;
+        synchronized (PENDING_HASH_CHECKS) {
+            check = PENDING_HASH_CHECKS.remove(id);
+        }
 
-        String[] splitID = id.toString().split("-");
+        if (check == null)
+            return false;
 
-        for (int i = 0; i < splitID.length; i++) {
-            if (i != splitID.length - 1)
-                destinationPath = destinationPath.resolve(splitID[i]);
+        //the hash of an offline UUID says nothing about the avatar, which comes from the online one
+        if (OFFLINE_SWAP_DATA.containsKey(id))
+            return true;
+
+        //cleared while waiting, nothing to load it into anymore
+        if (check.targetData.loadState == PlayerData.LoadState.EVICTED)
+            return true;
+
+        //the avatar was removed, so there's nothing left to keep
+        if (hash.isEmpty() && check.targetData != localPlayer && check.targetData.hasAvatar()) {
+            clearPlayer(id);
+            return true;
         }
 
-        Path nbtFilePath = destinationPath.resolve(splitID[splitID.length - 1] + ".nbt");
-        Path hashFilePath = destinationPath.resolve(splitID[splitID.length - 1] + ".hsh");
+        //nothing to load
+        if (hash.isEmpty() && !check.targetData.hasAvatar())
+            check.targetData.loadState = PlayerData.LoadState.READY;
 
-        try {
-            if (Files.exists(nbtFilePath) && Files.exists(hashFilePath)) {
-                String hash = Files.readAllLines(hashFilePath).get(0);
-                FileInputStream fis = new FileInputStream(nbtFilePath.toFile());
-                DataInputStream dis = new DataInputStream(fis);
+        check.targetData.lastHash = hash;
+        attemptCacheLoad(id, check.targetData);
+        return true;
+    }
 
-                targetData.loadFromNbt(dis);
-                targetData.lastHash = hash;
+    //Loads the model out of the local cache if it matches the last hash we got from the server, otherwise loads it off the network.
+    //Runs as a task, as this is called from the network thread, and reading the cache hits the disk.
+    public static void attemptCacheLoad(UUID id, PlayerData targetData) {
+        String hash = targetData.lastHash;
 
-                FiguraMod.LOGGER.debug("Used cached model.");
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        FiguraMod.doTask(() -> {
+            if (targetData.loadState == PlayerData.LoadState.EVICTED)
+                return;
+
+            if (!AvatarCache.tryLoad(id, hash, targetData))
+                loadFromNetwork(id, targetData, hash);
+        });
     }
 
     //Loads the model off of the network.
-    public static void loadFromNetwork(UUID id, PlayerData targetData) {
+    //The hash is the one the server confirmed right before this download, null when unknown, the avatar is only cached under it.
+    public static void loadFromNetwork(UUID id, PlayerData targetData, String hash) {
+        PENDING_DOWNLOADS.put(id, new PendingDownload(targetData, hash));
         FiguraMod.networkManager.getAvatarData(id);
     }
 
+    //Fetches the avatar of a player again, keeping the current one until the new one arrived,
+    //so only the sections that changed are reloaded.
+    public static void refreshPlayer(PlayerData data) {
+        if (data == localPlayer) {
+            clearPlayer(data.playerId);
+            return;
+        }
+
+        data.isInvalidated = false;
+        getPlayerAvatarFromServerOrCache(OFFLINE_SWAP_DATA.getOrDefault(data.playerId, data.playerId), data);
+    }
+
     public static void clearPlayer(UUID id) {
         if (localPlayer != null && id.compareTo(localPlayer.playerId) == 0) {
             if (!localPlayer.isLocalAvatar)
@@ -186,7 +241,10 @@ public final class PlayerDataManager {
 
     public static void clearCache() {
         FiguraSoundManager.getChannel().stopAllSounds();
+        LOADED_PLAYER_DATA.values().forEach(data -> data.loadState = PlayerData.LoadState.EVICTED);
         LOADED_PLAYER_DATA.clear();
+        OFFLINE_SWAP_DATA.clear();
+        PENDING_DOWNLOADS.clear();
         localPlayer = null;
         didInitLocalPlayer = false;
         lastLoadedFileName = null;
@@ -197,6 +255,7 @@ public final class PlayerDataManager {
         localPlayer.clearData();
 
         LOADED_PLAYER_DATA.remove(localPlayer.playerId);
+        localPlayer.loadState = PlayerData.LoadState.EVICTED;
         localPlayer = null;
         didInitLocalPlayer = false;
         lastLoadedFileName = null;
@@ -209,18 +268,56 @@ public final class PlayerDataManager {
         if (MinecraftClient.getInstance().world == null)
             return;
 
-        synchronized(TO_CLEAR) {
-            TO_CLEAR.forEach(uuid -> {
-                PlayerData data = getDataForPlayer(uuid);
-                if (data != null) data.clearData();
-                else FiguraSoundManager.getChannel().stopSound(uuid);
-                LOADED_PLAYER_DATA.remove(uuid);
+        for (Iterator<UUID> iterator = TO_CLEAR.iterator(); iterator.hasNext(); ) {
+            UUID uuid = iterator.next();
+            iterator.remove();
+
+            PlayerData data = LOADED_PLAYER_DATA.remove(uuid);
+            UUID onlineID = OFFLINE_SWAP_DATA.remove(uuid);
+            if (onlineID != null)
+                PENDING_DOWNLOADS.remove(onlineID);
+
+            if (data != null) {
+                data.loadState = PlayerData.LoadState.EVICTED;
+                data.clearData();
+            } else {
+                FiguraSoundManager.getChannel().stopSound(uuid);
+            }
+        }
+
+        LOADED_PLAYER_DATA.values().forEach(PlayerData::tick);
+
+        //Servers that never answer a hash check still get their avatars downloaded.
+        synchronized (PENDING_HASH_CHECKS) {
+            PENDING_HASH_CHECKS.entrySet().removeIf(entry -> {
+                if (FiguraMod.ticksElapsed - entry.getValue().requestTick < HASH_CHECK_TIMEOUT)
+                    return false;
+
+                UUID id = entry.getKey();
+                PlayerData targetData = entry.getValue().targetData;
+                FiguraMod.doTask(() -> loadFromNetwork(id, targetData, null));
+                return true;
             });
-            TO_CLEAR.clear();
         }
+    }
+
+    public static class PendingDownload {
+        public final PlayerData targetData;
+        public final String hash;
+
+        public PendingDownload(PlayerData targetData, String hash) {
+            this.targetData = targetData;
+            this.hash = hash;
+        }
+    }
+
+    private static class PendingHashCheck {
+        public final PlayerData targetData;
+        public final int requestTick;
 
-        synchronized(LOADED_PLAYER_DATA) {
-            LOADED_PLAYER_DATA.values().forEach(PlayerData::tick);
+        public PendingHashCheck(PlayerData targetData, int requestTick) {
+            this.targetData = targetData;
+            this.requestTick = requestTick;
         }
     }
 
@@ -0,0 +1,231 @@
+package net.blancworks.figura;
+
+import com.mojang.authlib.Agent;
+import com.mojang.authlib.GameProfile;
+import com.mojang.authlib.GameProfileRepository;
+import com.mojang.authlib.ProfileLookupCallback;
+import com.mojang.authlib.yggdrasil.ProfileNotFoundException;
+import com.mojang.authlib.yggdrasil.YggdrasilAuthenticationService;
+import net.fabricmc.fabric.api.util.NbtType;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.Tag;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Looks up the online UUID of player names, off the render thread.
+ * Used on offline mode servers and proxies, where players have a different UUID than the one their avatar is uploaded with.
+ * Names waiting for a lookup are batched into as few requests as possible, a name is never looked up twice at the same time,
+ * and results are kept on disk for a while, so rejoining the same server doesn't look everyone up again.
+ */
+public final class ProfileResolver {
+    private static final String CACHE_FILE = "profiles.nbt";
+
+    //How long results are kept, names that don't exist are checked again sooner
+    public static final long FOUND_TTL = TimeUnit.DAYS.toMillis(1);
+    public static final long NOT_FOUND_TTL = TimeUnit.HOURS.toMillis(1);
+    //Lookups that failed (like when offline) are retried after this
+    public static final long FAILED_TTL = TimeUnit.MINUTES.toMillis(5);
+
+    //The profile API takes at most this many names per request
+    private static final int BATCH_SIZE = 10;
+    private static final int MAX_CONCURRENT_LOOKUPS = 2;
+
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(MAX_CONCURRENT_LOOKUPS, runnable -> {
+        Thread thread = new Thread(runnable, "Figura Profile Resolver " + THREAD_COUNT.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    //Lowercase name -> lookup result
+    private static final Map<String, Entry> CACHE = new ConcurrentHashMap<>();
+    //Lowercase name -> lookup in progress, shared by everyone asking for the same name
+    private static final Map<String, CompletableFuture<UUID>> PENDING = new ConcurrentHashMap<>();
+    private static final Queue<String> QUEUE = new ConcurrentLinkedQueue<>();
+
+    private static GameProfileRepository repository;
+    //Reading the cache file, started by the first lookup
+    private static CompletableFuture<Void> cacheLoad;
+
+    /**
+     * Gets the online UUID for a player name.
+     *
+     * @param name the player name
+     * @return a future completed with the UUID, or with null if the name has no online profile,
+     * already completed if the name was looked up recently
+     */
+    public static CompletableFuture<UUID> resolve(String name) {
+        //until the cache is read, names are queued, and the lookups check the cache once it is
+        loadCache();
+
+        String key = name.toLowerCase(Locale.ROOT);
+        Entry entry = CACHE.get(key);
+        if (entry != null && !entry.isExpired())
+            return CompletableFuture.completedFuture(entry.id);
+
+        return PENDING.computeIfAbsent(key, k -> {
+            CompletableFuture<UUID> future = new CompletableFuture<>();
+            QUEUE.add(k);
+            EXECUTOR.execute(ProfileResolver::lookupBatch);
+            return future;
+        });
+    }
+
+    //Looks up the names waiting in the queue, there's one run per queued name, so runs that find it empty just return.
+    private static void lookupBatch() {
+        //the cache is read on this executor too, and it was queued before any lookup, so this never waits on a queued task
+        loadCache().join();
+
+        List<String> names = new ArrayList<>();
+        String name;
+        while (names.size() < BATCH_SIZE && (name = QUEUE.poll()) != null) {
+            //names queued while the cache was read might be in it
+            Entry entry = CACHE.get(name);
+            if (entry != null && !entry.isExpired()) {
+                CompletableFuture<UUID> future = PENDING.remove(name);
+                if (future != null)
+                    future.complete(entry.id);
+                continue;
+            }
+
+            names.add(name);
+        }
+
+        if (names.isEmpty())
+            return;
+
+        Map<String, UUID> found = new HashMap<>();
+        Set<String> notFound = new HashSet<>();
+
+        try {
+            getRepository().findProfilesByNames(names.toArray(new String[0]), Agent.MINECRAFT, new ProfileLookupCallback() {
+                @Override
+                public void onProfileLookupSucceeded(GameProfile profile) {
+                    found.put(profile.getName().toLowerCase(Locale.ROOT), profile.getId());
+                }
+
+                @Override
+                public void onProfileLookupFailed(GameProfile profile, Exception exception) {
+                    if (exception instanceof ProfileNotFoundException)
+                        notFound.add(profile.getName().toLowerCase(Locale.ROOT));
+                }
+            });
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        long time = System.currentTimeMillis();
+        for (String key : names) {
+            UUID id = found.get(key);
+
+            if (id != null)
+                CACHE.put(key, new Entry(id, time + FOUND_TTL));
+            else if (notFound.contains(key))
+                CACHE.put(key, new Entry(null, time + NOT_FOUND_TTL));
+            else
+                CACHE.put(key, new Entry(null, time + FAILED_TTL));
+
+            CompletableFuture<UUID> future = PENDING.remove(key);
+            if (future != null)
+                future.complete(id);
+        }
+
+        saveCache();
+    }
+
+    private static synchronized GameProfileRepository getRepository() {
+        if (repository == null)
+            repository = new YggdrasilAuthenticationService(MinecraftClient.getInstance().getNetworkProxy(), UUID.randomUUID().toString()).createProfileRepository();
+
+        return repository;
+    }
+
+    private static Path getCachePath() {
+        return FiguraMod.getModContentDirectory().resolve(CACHE_FILE);
+    }
+
+    private static synchronized CompletableFuture<Void> loadCache() {
+        if (cacheLoad == null)
+            cacheLoad = CompletableFuture.runAsync(ProfileResolver::readCache, EXECUTOR);
+
+        return cacheLoad;
+    }
+
+    private static void readCache() {
+        try {
+            Path path = getCachePath();
+            if (!Files.exists(path))
+                return;
+
+            CompoundTag tag;
+            try (FileInputStream fis = new FileInputStream(path.toFile())) {
+                tag = NbtIo.readCompressed(fis);
+            }
+
+            long time = System.currentTimeMillis();
+            for (Tag value : tag.getList("profiles", NbtType.COMPOUND)) {
+                CompoundTag profile = (CompoundTag) value;
+                long expires = profile.getLong("expires");
+
+                if (expires > time)
+                    CACHE.putIfAbsent(profile.getString("name"), new Entry(profile.containsUuid("id") ? profile.getUuid("id") : null, expires));
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static synchronized void saveCache() {
+        try {
+            long time = System.currentTimeMillis();
+            ListTag profiles = new ListTag();
+
+            CACHE.forEach((name, entry) -> {
+                //failed lookups aren't worth keeping
+                if (entry.expires <= time || (entry.id == null && entry.expires - time <= FAILED_TTL))
+                    return;
+
+                CompoundTag profile = new CompoundTag();
+                profile.putString("name", name);
+                profile.putLong("expires", entry.expires);
+                if (entry.id != null)
+                    profile.putUuid("id", entry.id);
+
+                profiles.add(profile);
+            });
+
+            CompoundTag tag = new CompoundTag();
+            tag.put("profiles", profiles);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            NbtIo.writeCompressed(tag, out);
+            AvatarCache.writeAtomically(getCachePath(), out.toByteArray());
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static class Entry {
+        public final UUID id;
+        public final long expires;
+
+        public Entry(UUID id, long expires) {
+            this.id = id;
+            this.expires = expires;
+        }
+
+        public boolean isExpired() {
+            return System.currentTimeMillis() > expires;
+        }
+    }
+}
@@ -6,6 +6,7 @@ import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import net.blancworks.figura.FiguraMod;
 import net.blancworks.figura.PlayerDataManager;
+import net.blancworks.figura.lua.ScriptScheduler;
 import net.fabricmc.loader.api.FabricLoader;
 import net.minecraft.client.options.KeyBinding;
 import net.minecraft.client.util.InputUtil;
@@ -62,6 +63,17 @@ public final class ConfigManager {
                 FiguraMod.getLatestModVersion();
             }
         },
+        AVATAR_CACHE_SIZE(64, InputType.INT),
+        SCRIPT_THREADS(2, InputType.INT) {
+            @Override
+            public void runOnChange() {
+                ScriptScheduler.updateThreadCount();
+            }
+        },
+        PING_BYTES(4096, InputType.INT),
+        LOD_DISTANCE(64, InputType.INT),
+        AVATAR_VERTEX_BUDGET(131072, InputType.INT),
+        AVATAR_RENDER_TIME(8, InputType.INT),
 
         ActionWheel,
 
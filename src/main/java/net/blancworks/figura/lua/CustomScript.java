@@ -17,7 +17,9 @@ import net.blancworks.figura.lua.api.math.LuaVector;
 import net.blancworks.figura.lua.api.model.VanillaModelAPI;
 import net.blancworks.figura.lua.api.model.VanillaModelPartCustomization;
 import net.blancworks.figura.lua.api.nameplate.NamePlateCustomization;
+import net.blancworks.figura.lua.api.network.PingScheduler;
 import net.blancworks.figura.models.CustomModelPart;
+import net.blancworks.figura.models.tasks.RenderTask;
 import net.blancworks.figura.lua.api.sound.FiguraSound;
 import net.blancworks.figura.lua.api.sound.FiguraSoundManager;
 import net.blancworks.figura.network.NewFiguraNetworkManager;
@@ -35,6 +37,8 @@ import org.luaj.vm2.lib.*;
 import org.luaj.vm2.lib.jse.JseBaseLib;
 import org.luaj.vm2.lib.jse.JseMathLib;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.function.Function;
@@ -61,6 +65,9 @@ public class CustomScript extends FiguraAsset {
     //Updated as things are added to it.
     public CompletableFuture<Void> currTask;
 
+    //Events of this script waiting for a worker, see ScriptScheduler.
+    private ScriptScheduler.ScriptQueue taskQueue;
+
     public RenderType renderMode = RenderType.RENDER;
     public enum RenderType {
         RENDER,
@@ -77,6 +84,31 @@ public class CustomScript extends FiguraAsset {
     public int pingSent = 0;
     public int pingReceived = 0;
 
+    //How long the last events took to run.
+    public final EventTime initTime = new EventTime();
+    public final EventTime tickTime = new EventTime();
+    public final EventTime pingTime = new EventTime();
+    public final EventTime renderTime = new EventTime();
+    public final EventTime worldRenderTime = new EventTime();
+    public final EventTime damageTime = new EventTime();
+
+    //Limits of the event currently running, checked by the debug hook.
+    private int instructionLimit = 0;
+    private long timeLimit = -1;
+    private long eventStartCpuTime = 0;
+    private long eventStartWallTime = 0;
+    private LuaValue limitHookFunction;
+    //Instructions run before the hook counter was last reset, see getInstructionCount.
+    private int instructionOffset = 0;
+    //Frame the last world_render event ran for, render shares its limits only within the same frame.
+    private long worldRenderFrame = -1;
+
+    //How many instructions run between time checks.
+    private static final int TIME_CHECK_INTERVAL = 256;
+
+    private static final ThreadMXBean THREAD_BEAN = ManagementFactory.getThreadMXBean();
+    private static final boolean CPU_TIME_SUPPORTED = THREAD_BEAN.isCurrentThreadCpuTimeSupported();
+
     //References to the tick and render functions for easy use elsewhere.
     private LuaEvent tickLuaEvent = null;
     private LuaEvent renderLuaEvent = null;
@@ -130,6 +162,14 @@ public class CustomScript extends FiguraAsset {
 
     public boolean allowPlayerTargeting = false;
 
+    //Most render tasks a script can keep across frames
+    public static final int MAX_RETAINED_RENDER_TASKS = 1024;
+
+    //Parts given render tasks since the last render event, so only those are cleared before the next one
+    private final ArrayList<CustomModelPart> partsWithRenderTasks = new ArrayList<>();
+    //Render tasks kept across frames, by id
+    private final Map<String, RetainedRenderTask> retainedRenderTasks = new HashMap<>();
+
     public static final UnaryOperator<Style> LUA_COLOR = (s) -> s.withColor(TextColor.fromRgb(0x5555FF));
     public static final Text LOG_PREFIX = new LiteralText("").formatted(Formatting.ITALIC).append(new LiteralText("[lua] ").styled(LUA_COLOR));
 
@@ -145,7 +185,7 @@ public class CustomScript extends FiguraAsset {
 
     public Queue<LuaPing> incomingPingQueue = new LinkedList<>();
 
-    public Queue<LuaPing> outgoingPingQueue = new LinkedList<>();
+    public final PingScheduler pingScheduler = new PingScheduler(this);
 
     public CustomScript() {
         source = "";
@@ -245,8 +285,33 @@ public class CustomScript extends FiguraAsset {
                 }
             };
 
+            limitHookFunction = new ZeroArgFunction() {
+                public LuaValue call() {
+                    int used = getInstructionCount();
+                    if (used >= instructionLimit)
+                        return instructionCapFunction.call();
+
+                    //this also catches time spent in java API calls, like raycasts, since the last check
+                    if (timeLimit >= 0 && getThreadCpuTime() - eventStartCpuTime > timeLimit)
+                        return instructionCapFunction.call();
+
+                    //the hook fires every count instructions since the counter was reset,
+                    //so the last stretch is shortened to end right on the limit
+                    int remaining = instructionLimit - used;
+                    if (remaining < TIME_CHECK_INTERVAL) {
+                        instructionOffset = used;
+                        scriptGlobals.running.state.bytecodes = 0;
+                        setLimitHook(limitHookFunction, remaining);
+                    }
+
+                    return NIL;
+                }
+            };
+
+            taskQueue = new ScriptScheduler.ScriptQueue(data != null && data.playerId != null ? data.playerId.toString() : scriptName);
+
             //Queue up a new task.
-            currTask = CompletableFuture.runAsync(
+            queueTask(
                     () -> {
                         try {
                             initInstructionCount = 0;
@@ -255,10 +320,11 @@ public class CustomScript extends FiguraAsset {
                             if (data != null) data.lastEntity = null;
                             chunk.call();
 
-                            initInstructionCount = scriptGlobals.running.state.bytecodes;
+                            initInstructionCount = getInstructionCount();
                         } catch (Exception error) {
                             handleError(error);
                         }
+                        recordEventTime(initTime);
 
                         isDone = true;
                         currTask = null;
@@ -346,8 +412,12 @@ public class CustomScript extends FiguraAsset {
         if (!isDone || scriptError || !hasPlayer || playerData.lastEntity == null)
             return;
 
-        queueTask(() -> {
+        long frame = ScriptRenderPolicy.getFrame();
+
+        //only the latest frame matters if the script is behind
+        queueTask("world_render", () -> {
             renderMode = RenderType.WORLD_RENDER;
+            worldRenderFrame = frame;
             worldRenderInstructionCount = 0;
             renderInstructionCount = 0;
             renderLayerInstructionCount = 0;
@@ -358,7 +428,8 @@ public class CustomScript extends FiguraAsset {
             } catch (Exception error) {
                 handleError(error);
             }
-            worldRenderInstructionCount = scriptGlobals.running.state.bytecodes;
+            worldRenderInstructionCount = getInstructionCount();
+            recordEventTime(worldRenderTime);
         });
     }
 
@@ -373,7 +444,8 @@ public class CustomScript extends FiguraAsset {
             } catch (Exception error) {
                 handleError(error);
             }
-            damageInstructionCount = scriptGlobals.running.state.bytecodes;
+            damageInstructionCount = getInstructionCount();
+            recordEventTime(damageTime);
         });
     }
 
@@ -529,21 +601,68 @@ public class CustomScript extends FiguraAsset {
     public void setInstructionLimitPermission(TrustContainer.Trust permissionID, int subtract) {
         int count = playerData.getTrustContainer().getTrust(permissionID) - subtract;
         setInstructionLimit(count);
+
+        //init only runs once, so it's only limited by instructions
+        if (permissionID != TrustContainer.Trust.INIT_INST)
+            setTimeLimit(0);
     }
 
     //Sets the instruction limit of the next function we'll call, and resets the bytecode count to 0.
+    //Also starts timing the next function.
     public void setInstructionLimit(int count) {
         scriptGlobals.running.state.bytecodes = 0;
+        instructionOffset = 0;
+        instructionLimit = count;
+        timeLimit = -1;
+
+        eventStartCpuTime = getThreadCpuTime();
+        eventStartWallTime = System.nanoTime();
+
+        setLimitHook(instructionCapFunction, count);
+    }
+
+    //Limits the CPU time of the function we're about to call, from the SCRIPT_TIME trust.
+    //The subtracted time, in microseconds, has already been used up by another event.
+    public void setTimeLimit(long subtract) {
+        TrustContainer.Trust trust = TrustContainer.Trust.SCRIPT_TIME;
+        int limit = playerData.getTrustContainer().getTrust(trust);
+
+        //no count hook means no limits at all, so don't add one
+        if (limit >= trust.max || instructionLimit <= 0)
+            return;
+
+        timeLimit = Math.max(limit - subtract, 0) * 1000L;
+
+        //check the time every now and then, instead of only once the instructions run out
+        setLimitHook(limitHookFunction, Math.min(instructionLimit, TIME_CHECK_INTERVAL));
+    }
+
+    //Instructions the current event ran so far.
+    public int getInstructionCount() {
+        return instructionOffset + scriptGlobals.running.state.bytecodes;
+    }
+
+    private void setLimitHook(LuaValue function, int count) {
         setHook.invoke(
                 LuaValue.varargsOf(
                         new LuaValue[]{
-                                instructionCapFunction,
+                                function,
                                 LuaValue.EMPTYSTRING, LuaValue.valueOf(count)
                         }
                 )
         );
     }
 
+    //Stores how long the current event took, since its limits were set.
+    private void recordEventTime(EventTime time) {
+        time.set(getThreadCpuTime() - eventStartCpuTime, System.nanoTime() - eventStartWallTime);
+    }
+
+    //CPU time used by this thread, in nanoseconds. Falls back to wall-clock time when the JVM can't measure it.
+    private static long getThreadCpuTime() {
+        return CPU_TIME_SUPPORTED ? THREAD_BEAN.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+
     //--Events--
 
     //Called whenever the global tick event happens
@@ -553,13 +672,14 @@ public class CustomScript extends FiguraAsset {
             float sounds = playerData.getTrustContainer().getTrust(TrustContainer.Trust.SOUNDS);
             particleSpawnCount = MathHelper.clamp(particleSpawnCount + (1 / 20f * particles), 0, particles);
             soundSpawnCount = MathHelper.clamp(soundSpawnCount + (1 / 20f * sounds), 0, sounds);
+            pingScheduler.tick();
         }
 
         //If the tick function exists, call it.
         if (tickLuaEvent != null) {
             if (lastTickFunction != null && !lastTickFunction.isDone())
                 return;
-            lastTickFunction = queueTask(this::onTick);
+            lastTickFunction = queueTask("tick", this::onTick);
         }
     }
 
@@ -582,40 +702,52 @@ public class CustomScript extends FiguraAsset {
             tickLuaEvent.call();
 
             //Process all pings.
-            pingSent = outgoingPingQueue.size();
+            List<LuaPing> outgoingPings = pingScheduler.takeReady();
+            pingSent = outgoingPings.size();
             pingReceived = incomingPingQueue.size();
 
+            long pingStartCpuTime = getThreadCpuTime();
+            long pingStartWallTime = System.nanoTime();
+
             while (incomingPingQueue.size() > 0) {
                 LuaPing p = incomingPingQueue.poll();
 
                 p.function.call(p.args);
             }
 
+            pingTime.set(getThreadCpuTime() - pingStartCpuTime, System.nanoTime() - pingStartWallTime);
+
             //Batch-send pings.
-            if (outgoingPingQueue.size() > 0)
-                ((NewFiguraNetworkManager) FiguraMod.networkManager).sendPing(outgoingPingQueue);
+            if (!outgoingPings.isEmpty())
+                ((NewFiguraNetworkManager) FiguraMod.networkManager).sendPing(outgoingPings);
         } catch (Exception error) {
             handleError(error);
             error.printStackTrace();
         }
-        tickInstructionCount = scriptGlobals.running.state.bytecodes;
+        tickInstructionCount = getInstructionCount();
+        recordEventTime(tickTime);
     }
 
     public void onRender(float deltaTime) {
-        synchronized (this.playerData.model.allParts) {
-            for (CustomModelPart part : this.playerData.model.allParts) {
-                CustomModelPart.clearExtraRendering(part);
-            }
-        }
+        clearFrameRenderTasks();
 
         renderMode = RenderType.RENDER;
-        setInstructionLimitPermission(TrustContainer.Trust.RENDER_INST, worldRenderInstructionCount);
+
+        //render and world_render share one budget, but only when world_render ran this frame, it's throttled on its own
+        boolean sharedFrame = worldRenderFrame == ScriptRenderPolicy.getFrame();
+        int instructions = playerData.getTrustContainer().getTrust(TrustContainer.Trust.RENDER_INST);
+        if (sharedFrame)
+            instructions = Math.max(instructions - worldRenderInstructionCount, 1);
+
+        setInstructionLimit(instructions);
+        setTimeLimit(sharedFrame ? worldRenderTime.cpuTime : 0);
         try {
             renderLuaEvent.call(LuaNumber.valueOf(deltaTime));
         } catch (Exception error) {
             handleError(error);
         }
-        renderInstructionCount = scriptGlobals.running.state.bytecodes;
+        renderInstructionCount = getInstructionCount();
+        recordEventTime(renderTime);
     }
 
     public void handleError(Exception error) {
@@ -632,14 +764,39 @@ public class CustomScript extends FiguraAsset {
     //--Tasks--
 
     public CompletableFuture<Void> queueTask(Runnable task) {
+        return queueTask(null, task);
+    }
+
+    //Tasks with the same key that are still waiting get merged into the newest one.
+    public CompletableFuture<Void> queueTask(String coalesceKey, Runnable task) {
         synchronized (this) {
-            if (currTask == null || currTask.isDone()) {
-                currTask = CompletableFuture.runAsync(task);
-            } else {
-                currTask = currTask.thenRun(task);
-            }
+            CompletableFuture<Void> future = ScriptScheduler.queue(taskQueue, coalesceKey, task);
+
+            //a merged task isn't necessarily the last one, so track whatever is at the end of the queue
+            currTask = taskQueue.getLast();
+
+            return future;
+        }
+    }
 
-            return currTask;
+    public int getPendingTaskCount() {
+        return taskQueue == null ? 0 : taskQueue.getPendingCount();
+    }
+
+    //Drops the events still waiting to run, used when this script is unloaded.
+    public void clearTasks() {
+        if (taskQueue != null)
+            taskQueue.clear();
+    }
+
+    //Time spent running an event, in microseconds.
+    public static class EventTime {
+        public volatile long cpuTime = 0;
+        public volatile long wallTime = 0;
+
+        public void set(long cpuNanos, long wallNanos) {
+            this.cpuTime = cpuNanos / 1000;
+            this.wallTime = wallNanos / 1000;
         }
     }
 
@@ -1000,6 +1157,110 @@ public class CustomScript extends FiguraAsset {
         lastPingID = Short.MIN_VALUE;
         functionIDMap.clear();
         newFunctionIDMap.clear();
+        pingScheduler.clear();
+    }
+
+    //--Render Tasks--
+
+    //Adds a render task for the current frame only, it's removed before the next render event.
+    public void addRenderTask(CustomModelPart part, RenderTask task) {
+        synchronized (partsWithRenderTasks) {
+            synchronized (part.renderTasks) {
+                if (part.renderTasks.isEmpty())
+                    partsWithRenderTasks.add(part);
+
+                part.renderTasks.add(task);
+            }
+        }
+    }
+
+    private void clearFrameRenderTasks() {
+        synchronized (partsWithRenderTasks) {
+            for (CustomModelPart part : partsWithRenderTasks) {
+                synchronized (part.renderTasks) {
+                    part.renderTasks.clear();
+                }
+            }
+
+            partsWithRenderTasks.clear();
+        }
+    }
+
+    /**
+     * Adds a render task that stays until it's removed, or replaces the one with the same id.
+     * The part is only touched when the task actually changed.
+     *
+     * @return false if a task identical to this one was already there
+     */
+    public boolean setRenderTask(String id, CustomModelPart part, RenderTask task) {
+        synchronized (retainedRenderTasks) {
+            RetainedRenderTask old = retainedRenderTasks.get(id);
+
+            if (old != null && old.part == part && old.task.isSameAs(task))
+                return false;
+
+            if (old == null && retainedRenderTasks.size() >= MAX_RETAINED_RENDER_TASKS)
+                throw new LuaError("Too many render tasks! Max is " + MAX_RETAINED_RENDER_TASKS);
+
+            if (old != null && old.part == part) {
+                //keep its place, so the render order doesn't change
+                synchronized (part.retainedRenderTasks) {
+                    part.retainedRenderTasks.set(part.retainedRenderTasks.indexOf(old.task), task);
+                }
+            } else {
+                if (old != null)
+                    old.remove();
+
+                synchronized (part.retainedRenderTasks) {
+                    part.retainedRenderTasks.add(task);
+                }
+            }
+
+            retainedRenderTasks.put(id, new RetainedRenderTask(part, task));
+            return true;
+        }
+    }
+
+    public boolean removeRenderTask(String id) {
+        synchronized (retainedRenderTasks) {
+            RetainedRenderTask old = retainedRenderTasks.remove(id);
+            if (old == null)
+                return false;
+
+            old.remove();
+            return true;
+        }
+    }
+
+    public boolean hasRenderTask(String id) {
+        synchronized (retainedRenderTasks) {
+            return retainedRenderTasks.containsKey(id);
+        }
+    }
+
+    public void clearRenderTasks() {
+        clearFrameRenderTasks();
+
+        synchronized (retainedRenderTasks) {
+            retainedRenderTasks.values().forEach(RetainedRenderTask::remove);
+            retainedRenderTasks.clear();
+        }
+    }
+
+    private static class RetainedRenderTask {
+        public final CustomModelPart part;
+        public final RenderTask task;
+
+        public RetainedRenderTask(CustomModelPart part, RenderTask task) {
+            this.part = part;
+            this.task = task;
+        }
+
+        public void remove() {
+            synchronized (part.retainedRenderTasks) {
+                part.retainedRenderTasks.remove(task);
+            }
+        }
     }
 
     //--Misc--
@@ -0,0 +1,82 @@
+package net.blancworks.figura.lua;
+
+import net.blancworks.figura.PlayerData;
+import net.blancworks.figura.PlayerDataManager;
+import net.blancworks.figura.models.ModelLOD;
+import net.blancworks.figura.trust.TrustContainer;
+
+//Decides on which frames the render and world_render events of an avatar run.
+//The local avatar always runs every frame. Others run less often the further away they are,
+//and even less when the script render events went over their share of the last frame.
+//world_render is skipped for avatars that weren't rendered last frame, unless they're trusted with offscreen rendering.
+public final class ScriptRenderPolicy {
+    //Distances, in blocks, past which the events run every 2nd and every 4th frame
+    public static final double HALF_RATE_DISTANCE = 16;
+    public static final double QUARTER_RATE_DISTANCE = 48;
+
+    //Time the render events of all avatars can take in a frame, before distant avatars are slowed down further
+    public static final long FRAME_BUDGET_NANOS = 4_000_000;
+
+    private static long frame = 0;
+    private static long frameTime = 0;
+    private static boolean overBudget = false;
+
+    //Called once at the start of every frame.
+    public static void startFrame() {
+        overBudget = frameTime > FRAME_BUDGET_NANOS;
+        frameTime = 0;
+        frame++;
+    }
+
+    public static long getFrame() {
+        return frame;
+    }
+
+    //Adds the time a render event took to this frame.
+    public static void recordTime(long nanos) {
+        frameTime += nanos;
+    }
+
+    public static boolean shouldRunRender(PlayerData data) {
+        return isLocal(data) || isOnFrame(data);
+    }
+
+    public static boolean shouldRunWorldRender(PlayerData data) {
+        if (isLocal(data))
+            return true;
+
+        boolean wasRendered = data.model != null && data.model.lastRenderFrame >= frame - 1;
+        if (!wasRendered) {
+            TrustContainer tc = data.getTrustContainer();
+            if (tc == null || tc.getTrust(TrustContainer.Trust.OFFSCREEN_RENDERING) != 1)
+                return false;
+        }
+
+        return isOnFrame(data);
+    }
+
+    private static boolean isLocal(PlayerData data) {
+        return data == PlayerDataManager.localPlayer;
+    }
+
+    private static boolean isOnFrame(PlayerData data) {
+        if (data.lastEntity == null)
+            return true;
+
+        int interval = getInterval(ModelLOD.getDistance(data.lastEntity));
+        if (overBudget && interval > 1)
+            interval *= 2;
+
+        //spread avatars over the frames, instead of running all of them on the same one
+        return (frame + (data.playerId.hashCode() & Integer.MAX_VALUE)) % interval == 0;
+    }
+
+    private static int getInterval(double distance) {
+        if (distance > QUARTER_RATE_DISTANCE)
+            return 4;
+        if (distance > HALF_RATE_DISTANCE)
+            return 2;
+
+        return 1;
+    }
+}
@@ -0,0 +1,206 @@
+package net.blancworks.figura.lua;
+
+import net.blancworks.figura.FiguraMod;
+import net.blancworks.figura.config.ConfigManager.Config;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//Runs script events on a small pool of worker threads owned by Figura, instead of the JVM wide common pool.
+//Every script has its own queue, so its events still run one at a time and in order,
+//while the workers take turns between scripts, running one event per turn, so a busy avatar can't starve the others.
+public class ScriptScheduler {
+    //Events that haven't started yet, per script. Past this, new events are dropped until the script catches up.
+    public static final int MAX_PENDING_TASKS = 64;
+
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    //Scripts with pending events, in the order they get their next turn.
+    private static final ConcurrentLinkedQueue<ScriptQueue> READY = new ConcurrentLinkedQueue<>();
+
+    private static ThreadPoolExecutor executor;
+
+    private static synchronized ThreadPoolExecutor getExecutor() {
+        if (executor == null) {
+            int threads = getConfiguredThreads();
+
+            executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "Figura Script Worker #" + THREAD_COUNT.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        return executor;
+    }
+
+    private static int getConfiguredThreads() {
+        return Math.max((int) Config.SCRIPT_THREADS.value, 1);
+    }
+
+    //Applies a changed worker count from the config.
+    public static synchronized void updateThreadCount() {
+        if (executor == null)
+            return;
+
+        int threads = getConfiguredThreads();
+
+        //the maximum can never be lower than the core size
+        if (threads > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(threads);
+            executor.setCorePoolSize(threads);
+        } else {
+            executor.setCorePoolSize(threads);
+            executor.setMaximumPoolSize(threads);
+        }
+    }
+
+    //---------METRICS---------
+
+    public static synchronized int getWorkerCount() {
+        return executor == null ? 0 : executor.getPoolSize();
+    }
+
+    public static synchronized int getBusyWorkerCount() {
+        return executor == null ? 0 : executor.getActiveCount();
+    }
+
+    //How many scripts are waiting for their turn
+    public static int getWaitingScriptCount() {
+        return READY.size();
+    }
+
+    /**
+     * Queues an event for a script.
+     *
+     * @param queue       the queue of the script
+     * @param coalesceKey events with the same key that are still waiting are merged into one, running the newest task.
+     *                    {@code null} to always queue the task
+     * @param task        the event
+     * @return a future completed once the task ran, or once it was dropped
+     */
+    public static CompletableFuture<Void> queue(ScriptQueue queue, String coalesceKey, Runnable task) {
+        CompletableFuture<Void> future;
+        boolean schedule;
+
+        synchronized (queue) {
+            if (coalesceKey != null) {
+                for (Task pending : queue.pending) {
+                    if (coalesceKey.equals(pending.coalesceKey)) {
+                        pending.runnable = task;
+                        return pending.future;
+                    }
+                }
+            }
+
+            if (queue.pending.size() >= MAX_PENDING_TASKS) {
+                if (!queue.warned) {
+                    queue.warned = true;
+                    FiguraMod.LOGGER.warn("Script for " + queue.name + " is falling behind, dropping events");
+                }
+
+                return CompletableFuture.completedFuture(null);
+            }
+
+            future = new CompletableFuture<>();
+            queue.pending.add(new Task(coalesceKey, task, future));
+            queue.last = future;
+
+            schedule = !queue.scheduled;
+            queue.scheduled = true;
+        }
+
+        if (schedule) {
+            READY.add(queue);
+            getExecutor().execute(ScriptScheduler::runNext);
+        }
+
+        return future;
+    }
+
+    //Gives the next script in line one turn.
+    private static void runNext() {
+        ScriptQueue queue = READY.poll();
+        if (queue == null)
+            return;
+
+        Task task;
+        synchronized (queue) {
+            task = queue.pending.poll();
+        }
+
+        if (task != null) {
+            try {
+                task.runnable.run();
+                task.future.complete(null);
+            } catch (Throwable e) {
+                e.printStackTrace();
+                task.future.completeExceptionally(e);
+            }
+        }
+
+        //back of the line, if it has more to do
+        synchronized (queue) {
+            if (queue.pending.isEmpty()) {
+                queue.scheduled = false;
+                queue.warned = false;
+                return;
+            }
+        }
+
+        READY.add(queue);
+        getExecutor().execute(ScriptScheduler::runNext);
+    }
+
+    //The pending events of one script.
+    public static class ScriptQueue {
+        private final String name;
+        private final ArrayDeque<Task> pending = new ArrayDeque<>();
+        //Whether this queue is waiting in line or running, so it's never run by two workers at once
+        private boolean scheduled = false;
+        private boolean warned = false;
+        //Completes once every event queued so far ran
+        private CompletableFuture<Void> last = CompletableFuture.completedFuture(null);
+
+        public ScriptQueue(String name) {
+            this.name = name;
+        }
+
+        public synchronized CompletableFuture<Void> getLast() {
+            return last;
+        }
+
+        public synchronized int getPendingCount() {
+            return pending.size();
+        }
+
+        //Drops every event that hasn't started yet, completing their futures.
+        public void clear() {
+            Task[] tasks;
+            synchronized (this) {
+                tasks = pending.toArray(new Task[0]);
+                pending.clear();
+            }
+
+            for (Task task : tasks)
+                task.future.complete(null);
+        }
+    }
+
+    private static class Task {
+        public final String coalesceKey;
+        public Runnable runnable;
+        public final CompletableFuture<Void> future;
+
+        public Task(String coalesceKey, Runnable runnable, CompletableFuture<Void> future) {
+            this.coalesceKey = coalesceKey;
+            this.runnable = runnable;
+            this.future = future;
+        }
+    }
+}
@@ -3,11 +3,14 @@ package net.blancworks.figura.lua.api;
 import net.blancworks.figura.FiguraMod;
 import net.blancworks.figura.PlayerData;
 import net.blancworks.figura.lua.CustomScript;
+import net.blancworks.figura.lua.api.network.PingsAPI;
 import net.blancworks.figura.network.NewFiguraNetworkManager;
 import net.blancworks.figura.trust.TrustContainer;
 import net.minecraft.util.Identifier;
+import org.luaj.vm2.LuaError;
 import org.luaj.vm2.LuaTable;
 import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.lib.TwoArgFunction;
 import org.luaj.vm2.lib.ZeroArgFunction;
 
 public class MetaAPI {
@@ -137,6 +140,33 @@ public class MetaAPI {
                 }
             });
 
+            set("getPingLimit", new ZeroArgFunction() {
+                @Override
+                public LuaValue call() {
+                    return LuaValue.valueOf(script.playerData.getTrustContainer().getTrust(TrustContainer.Trust.PINGS));
+                }
+            });
+
+            set("getCurrentPingCount", new ZeroArgFunction() {
+                @Override
+                public LuaValue call() {
+                    return LuaValue.valueOf(script.pingScheduler.getSendBudget());
+                }
+            });
+
+            //Lossy pings are dropped when they don't fit in the budget, instead of waiting for it
+            set("setPingLossy", new TwoArgFunction() {
+                @Override
+                public LuaValue call(LuaValue arg1, LuaValue arg2) {
+                    Short id = PingsAPI.getPingID(script, arg1);
+                    if (id == null)
+                        throw new LuaError("Not a registered ping!");
+
+                    script.pingScheduler.setLossy(id, arg2.isnil() || arg2.checkboolean());
+                    return NIL;
+                }
+            });
+
 
             set("getFiguraVersion", new ZeroArgFunction() {
                 @Override
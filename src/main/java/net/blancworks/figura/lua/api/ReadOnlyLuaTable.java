@@ -19,7 +19,8 @@ public class ReadOnlyLuaTable extends LuaTable {
                 .next(n.arg1())) {
             LuaValue key = n.arg1();
             LuaValue value = n.arg(2);
-            super.rawset(key, value.istable() ? new ReadOnlyLuaTable(value) : value);
+            //tables that are already read-only are shared, not copied
+            super.rawset(key, value.istable() && !(value instanceof ReadOnlyLuaTable) ? new ReadOnlyLuaTable(value) : value);
         }
     }
     
@@ -0,0 +1,116 @@
+package net.blancworks.figura.lua.api;
+
+import org.luaj.vm2.LuaFunction;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Varargs;
+
+import java.util.Map;
+
+//A read-only API table whose functions are shared by every table of the same kind.
+//A shared function is bound to this table's target the first time a script looks it up, and reused after that,
+//so creating a table does not build its whole API surface.
+public abstract class SharedFunctionTable<T> extends ReadOnlyLuaTable {
+    private final Map<String, ? extends TargetFunction<? super T>> functions;
+    private volatile boolean allBound = false;
+
+    public SharedFunctionTable(Map<String, ? extends TargetFunction<? super T>> functions) {
+        super();
+        this.functions = functions;
+
+        //room for every function up front, so binding one never rehashes the table under a concurrent reader
+        presize(0, functions.size());
+    }
+
+    //Resolves the object the functions of this table act on, when one of them is called.
+    protected abstract T getTarget();
+
+    @Override
+    public LuaValue rawget(LuaValue key) {
+        LuaValue value = super.rawget(key);
+
+        if (value.isnil() && !allBound && key.type() == LuaValue.TSTRING)
+            return bind(key);
+
+        return value;
+    }
+
+    @Override
+    public Varargs next(LuaValue key) {
+        //iterating needs every key to be present
+        if (!allBound)
+            bindAll();
+
+        return super.next(key);
+    }
+
+    //Tables can be shared between scripts, so binding is synchronized
+    private synchronized LuaValue bind(LuaValue key) {
+        LuaValue value = super.rawget(key);
+        if (!value.isnil())
+            return value;
+
+        TargetFunction<? super T> function = functions.get(key.tojstring());
+        if (function == null)
+            return NIL;
+
+        value = new BoundFunction<>(this, function);
+        javaRawSet(key, value);
+        return value;
+    }
+
+    private synchronized void bindAll() {
+        for (String name : functions.keySet())
+            bind(LuaValue.valueOf(name));
+
+        allBound = true;
+    }
+
+    @FunctionalInterface
+    public interface TargetFunction<T> {
+        LuaValue call(T target, LuaValue arg1, LuaValue arg2);
+    }
+
+    //A shared function, bound to the table it was looked up from.
+    //Works with both "table.func(arg)" and "table:func(arg)".
+    private static class BoundFunction<T> extends LuaFunction {
+        private final SharedFunctionTable<T> table;
+        private final TargetFunction<? super T> function;
+
+        public BoundFunction(SharedFunctionTable<T> table, TargetFunction<? super T> function) {
+            this.table = table;
+            this.function = function;
+        }
+
+        private LuaValue dispatch(LuaValue arg1, LuaValue arg2, LuaValue arg3) {
+            if (arg1 == table)
+                return function.call(table.getTarget(), arg2, arg3);
+
+            return function.call(table.getTarget(), arg1, arg2);
+        }
+
+        @Override
+        public LuaValue call() {
+            return dispatch(NIL, NIL, NIL);
+        }
+
+        @Override
+        public LuaValue call(LuaValue arg) {
+            return dispatch(arg, NIL, NIL);
+        }
+
+        @Override
+        public LuaValue call(LuaValue arg1, LuaValue arg2) {
+            return dispatch(arg1, arg2, NIL);
+        }
+
+        @Override
+        public LuaValue call(LuaValue arg1, LuaValue arg2, LuaValue arg3) {
+            return dispatch(arg1, arg2, arg3);
+        }
+
+        @Override
+        public Varargs invoke(Varargs args) {
+            return dispatch(args.arg1(), args.arg(2), args.arg(3));
+        }
+    }
+}
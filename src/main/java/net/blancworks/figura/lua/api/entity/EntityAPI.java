@@ -1,7 +1,9 @@
 package net.blancworks.figura.lua.api.entity;
 
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.MapMaker;
 import net.blancworks.figura.lua.api.NBTAPI;
-import net.blancworks.figura.lua.api.ReadOnlyLuaTable;
+import net.blancworks.figura.lua.api.SharedFunctionTable;
 import net.blancworks.figura.lua.api.item.ItemStackAPI;
 import net.blancworks.figura.lua.api.math.LuaVector;
 import net.minecraft.entity.Entity;
@@ -19,274 +21,148 @@ import net.minecraft.util.math.MathHelper;
 import net.minecraft.util.registry.Registry;
 import net.minecraft.world.World;
 import org.luaj.vm2.*;
-import org.luaj.vm2.lib.OneArgFunction;
-import org.luaj.vm2.lib.ZeroArgFunction;
 
+import java.lang.ref.WeakReference;
 import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
 import java.util.function.Supplier;
 
 public class EntityAPI {
 
-    public static class EntityLuaAPITable<T extends Entity> extends ReadOnlyLuaTable {
+    //Entity -> its API table, so scripts inspecting the same entity every tick reuse one table.
+    //Tables only hold a weak reference to their entity, so this never keeps an entity alive.
+    //Keyed by identity, entities are equal by id, and a respawned or re-tracked entity keeps the id of the removed one.
+    private static final ConcurrentMap<Entity, EntityLuaAPITable<?>> ENTITY_TABLES = new MapMaker().weakKeys().makeMap();
+
+    public static class EntityLuaAPITable<T extends Entity> extends SharedFunctionTable<T> {
+
+        //Functions shared by every entity table
+        public static final Map<String, TargetFunction<Entity>> FUNCTIONS = new ImmutableMap.Builder<String, TargetFunction<Entity>>()
+                .put("getPos", (entity, arg, arg2) -> {
+                    if (!arg.isnil())
+                        return LuaVector.of(entity.getCameraPosVec(arg.tofloat()));
+
+                    return LuaVector.of(entity.getPos());
+                })
+                .put("getRot", (entity, arg, arg2) -> {
+                    float pitch = entity.pitch;
+                    float yaw = entity.yaw;
+
+                    if (!arg.isnil()) {
+                        pitch = MathHelper.lerp(arg.tofloat(), entity.prevPitch, pitch);
+                        yaw = MathHelper.lerp(arg.tofloat(), entity.prevYaw, yaw);
+                    }
+
+                    return new LuaVector(pitch, yaw);
+                })
+                .put("getType", (entity, arg, arg2) -> LuaString.valueOf(Registry.ENTITY_TYPE.getId(entity.getType()).toString()))
+                .put("getVelocity", (entity, arg, arg2) -> LuaVector.of(entity.getVelocity()))
+                .put("getLookDir", (entity, arg, arg2) -> LuaVector.of(entity.getRotationVector()))
+                .put("getUUID", (entity, arg, arg2) -> LuaString.valueOf(entity.getUuid().toString()))
+                .put("getFireTicks", (entity, arg, arg2) -> LuaNumber.valueOf(entity.getFireTicks()))
+                .put("getFrozenTicks", (entity, arg, arg2) -> LuaNumber.valueOf(0))
+                .put("getAir", (entity, arg, arg2) -> LuaNumber.valueOf(entity.getAir()))
+                .put("getMaxAir", (entity, arg, arg2) -> LuaNumber.valueOf(entity.getMaxAir()))
+                .put("getAirPercentage", (entity, arg, arg2) -> LuaNumber.valueOf(((float) entity.getAir()) / entity.getMaxAir()))
+                .put("getWorldName", (entity, arg, arg2) -> {
+                    if (entity == null) return LuaValue.NIL;
+                    World w = entity.world;
+
+                    return LuaString.valueOf(w.getRegistryKey().getValue().toString());
+                })
+                .put("getEquipmentItem", (entity, arg, arg2) -> {
+                    int index = arg.checkint() - 1;
+                    ItemStack stack = retrieveItemByIndex(entity.getItemsEquipped(), index);
+                    return ItemStackAPI.getTable(stack);
+                })
+                .put("getAnimation", (entity, arg, arg2) -> {
+                    if (entity == null) return LuaValue.NIL;
+
+                    EntityPose p = entity.getPose();
+
+                    if (p == null)
+                        return LuaValue.NIL;
+
+                    return LuaString.valueOf(p.name());
+                })
+                .put("getVehicle", (entity, arg, arg2) -> {
+                    Entity vehicle = entity.getVehicle();
+                    if (vehicle == null) return LuaValue.NIL;
+                    return getTableForEntity(vehicle);
+                })
+                .put("isGrounded", (entity, arg, arg2) -> LuaBoolean.valueOf(entity.isOnGround()))
+                .put("getEyeHeight", (entity, arg, arg2) -> LuaNumber.valueOf(entity.getEyeHeight(entity.getPose())))
+                .put("getBoundingBox", (entity, arg, arg2) -> {
+                    EntityDimensions dims = entity.getDimensions(entity.getPose());
+                    float x = dims.width;
+                    float y = dims.height;
+                    float z = dims.width;
+
+                    return new LuaVector(x, y, z);
+                })
+                .put("getName", (entity, arg, arg2) -> {
+                    if (entity == null)
+                        throw new LuaError("Entity does not exist!");
+
+                    if (entity.hasCustomName() && entity.getCustomName() != null)
+                        return LuaValue.valueOf(entity.getCustomName().getString());
+                    else
+                        return LuaValue.valueOf(entity.getName().getString());
+                })
+                .put("getTargetedBlockPos", (entity, arg, arg2) -> {
+                    HitResult result = entity.raycast(20.0D, 0.0F, arg.checkboolean());
+                    if (result.getType() == HitResult.Type.BLOCK) {
+                        return LuaVector.of(((BlockHitResult) result).getBlockPos());
+                    } else {
+                        return LuaValue.NIL;
+                    }
+                })
+                .put("isWet", (entity, arg, arg2) -> LuaBoolean.valueOf(entity.isWet()))
+                .put("isTouchingWater", (entity, arg, arg2) -> LuaBoolean.valueOf(entity.isTouchingWater()))
+                .put("isUnderwater", (entity, arg, arg2) -> LuaBoolean.valueOf(entity.isSubmergedInWater()))
+                .put("isInLava", (entity, arg, arg2) -> LuaBoolean.valueOf(entity.isInLava()))
+                .put("isInRain", (entity, arg, arg2) -> {
+                    BlockPos blockPos = entity.getBlockPos();
+                    return LuaBoolean.valueOf(entity.world.hasRain(blockPos) || entity.world.hasRain(new BlockPos(blockPos.getX(), entity.getBoundingBox().maxY, blockPos.getZ())));
+                })
+                .put("getNbtValue", (entity, arg, arg2) -> {
+                    String pathArg = arg.checkjstring();
+
+                    String[] path = pathArg.split("\\.");
+
+                    CompoundTag tag = new CompoundTag();
+                    entity.toTag(tag);
+
+                    Tag current = tag;
+                    for (String key : path) {
+                        if (current == null)
+                            current = tag.get(key);
+                        else if (current instanceof CompoundTag)
+                            current = ((CompoundTag) current).get(key);
+                        else current = null;
+                    }
+
+                    if (current == null) return LuaValue.NIL;
+
+                    return NBTAPI.fromTag(current);
+                })
+                .build();
 
         public Supplier<T> targetEntity;
-        
+
         public EntityLuaAPITable(Supplier<T> targetEntity) {
-            this.targetEntity = targetEntity;
+            this(targetEntity, FUNCTIONS);
         }
 
+        protected EntityLuaAPITable(Supplier<T> targetEntity, Map<String, ? extends TargetFunction<? super T>> functions) {
+            super(functions);
+            this.targetEntity = targetEntity;
+        }
 
-        public LuaTable getTable() {
-
-            return new LuaTable() {{
-
-                set("getPos", new OneArgFunction() {
-                    @Override
-                    public LuaValue call(LuaValue arg) {
-                        if (!arg.isnil())
-                            return LuaVector.of(targetEntity.get().getCameraPosVec(arg.tofloat()));
-
-                        return LuaVector.of(targetEntity.get().getPos());
-                    }
-                });
-
-                set("getRot", new OneArgFunction() {
-                    @Override
-                    public LuaValue call(LuaValue arg) {
-                        Entity e = targetEntity.get();
-
-                        float pitch = e.pitch;
-                        float yaw = e.yaw;
-
-                        if (!arg.isnil()) {
-                            pitch = MathHelper.lerp(arg.tofloat(), e.prevPitch, pitch);
-                            yaw = MathHelper.lerp(arg.tofloat(), e.prevYaw, yaw);
-                        }
-
-                        return new LuaVector(pitch, yaw);
-                    }
-                });
-
-                set("getType", new ZeroArgFunction() {
-                    @Override
-                    public LuaValue call() {
-                        return LuaString.valueOf(Registry.ENTITY_TYPE.getId(targetEntity.get().getType()).toString());
-                    }
-                });
-
-                set("getVelocity", new ZeroArgFunction() {
-                    @Override
-                    public LuaValue call() {
-                        return LuaVector.of(targetEntity.get().getVelocity());
-                    }
-                });
-
-                set("getLookDir", new ZeroArgFunction() {
-                    @Override
-                    public LuaValue call() {
-                        return LuaVector.of(targetEntity.get().getRotationVector());
-                    }
-                });
-
-                set("getUUID", new ZeroArgFunction() {
-                    @Override
-                    public LuaValue call() {
-                        return LuaString.valueOf(targetEntity.get().getUuid().toString());
-                    }
-                });
-
-                set("getFireTicks", new ZeroArgFunction() {
-                    @Override
-                    public LuaValue call() {
-                        return LuaNumber.valueOf(targetEntity.get().getFireTicks());
-                    }
-                });
-
-                set("getFrozenTicks", new ZeroArgFunction() {
-                    @Override
-                    public LuaValue call() {
-                        return LuaNumber.valueOf(0);
-                    }
-                });
-
-                set("getAir", new ZeroArgFunction() {
-                    @Override
-                    public LuaValue call() {
-                        return LuaNumber.valueOf(targetEntity.get().getAir());
-                    }
-                });
-
-                set("getMaxAir", new ZeroArgFunction() {
-                    @Override
-                    public LuaValue call() {
-                        return LuaNumber.valueOf(targetEntity.get().getMaxAir());
-                    }
-                });
-
-                set("getAirPercentage", new ZeroArgFunction() {
-                    @Override
-                    public LuaValue call() {
-                        return LuaNumber.valueOf(((float)targetEntity.get().getAir()) / targetEntity.get().getMaxAir());
-                    }
-                });
-
-                set("getWorldName", new ZeroArgFunction() {
-                    @Override
-                    public LuaValue call() {
-                        if (targetEntity == null) return NIL;
-                        World w = targetEntity.get().world;
-
-                        return LuaString.valueOf(w.getRegistryKey().getValue().toString());
-                    }
-                });
-
-                set("getEquipmentItem", new OneArgFunction() {
-                    @Override
-                    public LuaValue call(LuaValue arg) {
-                        int index = arg.checkint() - 1;
-                        ItemStack stack = retrieveItemByIndex(targetEntity.get().getItemsEquipped(), index);
-                        return ItemStackAPI.getTable(stack);
-                    }
-                });
-
-                set("getAnimation", new ZeroArgFunction() {
-                    @Override
-                    public LuaValue call() {
-                        if (targetEntity == null) return NIL;
-
-                        EntityPose p = targetEntity.get().getPose();
-
-                        if (p == null)
-                            return NIL;
-
-                        return LuaString.valueOf(p.name());
-                    }
-                });
-
-                set("getVehicle", new ZeroArgFunction() {
-                    @Override
-                    public LuaValue call() {
-                        if (targetEntity.get().getVehicle() == null) return NIL;
-                        Entity vehicle = targetEntity.get().getVehicle();
-                        return getTableForEntity(vehicle);
-                    }
-                });
-
-                set("isGrounded", new ZeroArgFunction() {
-                    @Override
-                    public LuaValue call() {
-                        return LuaBoolean.valueOf(targetEntity.get().isOnGround());
-                    }
-                });
-
-                set("getEyeHeight", new ZeroArgFunction() {
-                    @Override
-                    public LuaValue call() {
-                        return LuaNumber.valueOf(targetEntity.get().getEyeHeight(targetEntity.get().getPose()));
-                    }
-                });
-
-                set("getBoundingBox", new ZeroArgFunction() {
-                    @Override
-                    public LuaValue call() {
-                        Entity ent = targetEntity.get();
-                        EntityDimensions dims = ent.getDimensions(ent.getPose());
-                        float x = dims.width;
-                        float y = dims.height;
-                        float z = dims.width;
-
-                        return new LuaVector(x, y, z);
-                    }
-                });
-
-                set("getName", new ZeroArgFunction() {
-                    @Override
-                    public LuaValue call() {
-                        verifyEntityExists();
-                        
-                        Entity ent = targetEntity.get();
-                        if (ent.hasCustomName() && ent.getCustomName() != null)
-                            return LuaValue.valueOf(ent.getCustomName().getString());
-                        else
-                            return LuaValue.valueOf(ent.getName().getString());
-                    }
-                });
-
-                set("getTargetedBlockPos", new OneArgFunction() {
-                    @Override
-                    public LuaValue call(LuaValue arg) {
-                        HitResult result = targetEntity.get().raycast(20.0D, 0.0F, arg.checkboolean());
-                        if (result.getType() == HitResult.Type.BLOCK) {
-                            return LuaVector.of(((BlockHitResult) result).getBlockPos());
-                        } else {
-                            return NIL;
-                        }
-                    }
-                });
-
-                set("isWet", new ZeroArgFunction() {
-                    @Override
-                    public LuaValue call() {
-                        return LuaBoolean.valueOf(targetEntity.get().isWet());
-                    }
-                });
-
-                set("isTouchingWater", new ZeroArgFunction() {
-                    @Override
-                    public LuaValue call() {
-                        return LuaBoolean.valueOf(targetEntity.get().isTouchingWater());
-                    }
-                });
-
-                set("isUnderwater", new ZeroArgFunction() {
-                    @Override
-                    public LuaValue call() {
-                        return LuaBoolean.valueOf(targetEntity.get().isSubmergedInWater());
-                    }
-                });
-
-                set("isInLava", new ZeroArgFunction() {
-                    @Override
-                    public LuaValue call() {
-                        return LuaBoolean.valueOf(targetEntity.get().isInLava());
-                    }
-                });
-
-                set("isInRain", new ZeroArgFunction() {
-                    @Override
-                    public LuaValue call() {
-                        Entity entity = targetEntity.get();
-                        BlockPos blockPos = entity.getBlockPos();
-                        return LuaBoolean.valueOf(entity.world.hasRain(blockPos) || entity.world.hasRain(new BlockPos(blockPos.getX(), entity.getBoundingBox().maxY, blockPos.getZ())));
-                    }
-                });
-
-                set("getNbtValue", new OneArgFunction() {
-                    @Override
-                    public LuaValue call(LuaValue arg) {
-                        String pathArg = arg.checkjstring();
-
-                        String[] path = pathArg.split("\\.");
-
-                        CompoundTag tag = new CompoundTag();
-                        targetEntity.get().toTag(tag);
-
-                        Tag current = tag;
-                        for (String key : path) {
-                            if (current == null)
-                                current = tag.get(key);
-                            else if (current instanceof CompoundTag)
-                                current = ((CompoundTag) current).get(key);
-                            else current = null;
-                        }
-
-                        if (current == null) return NIL;
-
-                        return NBTAPI.fromTag(current);
-                    }
-                });
-
-            }};
+        @Override
+        protected T getTarget() {
+            return targetEntity.get();
         }
 
         @Override
@@ -324,8 +200,14 @@ public class EntityAPI {
     }
 
     public static LuaTable getTableForEntity(Entity entity) {
-        if (entity instanceof PlayerEntity) return new PlayerEntityAPI.PlayerEntityLuaAPITable(() -> (PlayerEntity) entity).getTable();
-        if (entity instanceof LivingEntity) return new LivingEntityAPI.LivingEntityAPITable<>(() -> (LivingEntity) entity).getTable();
-        return new EntityAPI.EntityLuaAPITable<>(() -> entity).getTable();
+        return ENTITY_TABLES.computeIfAbsent(entity, EntityAPI::createTable);
+    }
+
+    private static EntityLuaAPITable<?> createTable(Entity entity) {
+        WeakReference<Entity> ref = new WeakReference<>(entity);
+
+        if (entity instanceof PlayerEntity) return new PlayerEntityAPI.PlayerEntityLuaAPITable(() -> (PlayerEntity) ref.get());
+        if (entity instanceof LivingEntity) return new LivingEntityAPI.LivingEntityAPITable<>(() -> (LivingEntity) ref.get());
+        return new EntityAPI.EntityLuaAPITable<>(ref::get);
     }
 }
@@ -1,5 +1,6 @@
 package net.blancworks.figura.lua.api.entity;
 
+import com.google.common.collect.ImmutableMap;
 import net.blancworks.figura.lua.api.item.ItemStackAPI;
 import net.minecraft.entity.LivingEntity;
 import net.minecraft.entity.effect.StatusEffect;
@@ -11,9 +12,8 @@ import net.minecraft.util.Identifier;
 import net.minecraft.util.math.MathHelper;
 import net.minecraft.util.registry.Registry;
 import org.luaj.vm2.*;
-import org.luaj.vm2.lib.OneArgFunction;
-import org.luaj.vm2.lib.ZeroArgFunction;
 
+import java.util.Map;
 import java.util.function.Supplier;
 
 public class LivingEntityAPI {
@@ -21,152 +21,74 @@ public class LivingEntityAPI {
     
     public static class LivingEntityAPITable<T extends LivingEntity> extends EntityAPI.EntityLuaAPITable<T> {
 
-        public LivingEntityAPITable(Supplier<T> targetEntity) {
-            super(targetEntity);
-        }
-
-        @Override
-        public LuaTable getTable() {
-            LuaTable superTable = super.getTable();
-
-            superTable.set("getBodyYaw", new OneArgFunction() {
-                @Override
-                public LuaValue call(LuaValue arg) {
-                    float bodyYaw = targetEntity.get().bodyYaw;
+        //Functions shared by every living entity table, on top of the entity ones
+        public static final Map<String, TargetFunction<? super LivingEntity>> FUNCTIONS = new ImmutableMap.Builder<String, TargetFunction<? super LivingEntity>>()
+                .putAll(EntityAPI.EntityLuaAPITable.FUNCTIONS)
+                .put("getBodyYaw", (entity, arg, arg2) -> {
+                    float bodyYaw = entity.bodyYaw;
 
                     if (!arg.isnil())
-                        bodyYaw = MathHelper.lerp(arg.tofloat(), targetEntity.get().prevBodyYaw, bodyYaw);
+                        bodyYaw = MathHelper.lerp(arg.tofloat(), entity.prevBodyYaw, bodyYaw);
 
                     return LuaNumber.valueOf(bodyYaw);
-                }
-            });
-            
-            superTable.set("getHealth", new ZeroArgFunction() {
-                @Override
-                public LuaValue call() {
-                    return LuaNumber.valueOf(targetEntity.get().getHealth());
-                }
-            });
-
-            superTable.set("getMaxHealth", new ZeroArgFunction() {
-                @Override
-                public LuaValue call() {
-                    return LuaNumber.valueOf(targetEntity.get().getMaxHealth());
-                }
-            });
-
-            superTable.set("getHealthPercentage", new ZeroArgFunction() {
-                @Override
-                public LuaValue call() {
-                    return LuaNumber.valueOf(targetEntity.get().getHealth() / targetEntity.get().getMaxHealth());
-                }
-            });
-
-            superTable.set("getArmor", new ZeroArgFunction() {
-                @Override
-                public LuaValue call() {
-                    return LuaNumber.valueOf(targetEntity.get().getArmor());
-                }
-            });
-
-            superTable.set("getDeathTime", new ZeroArgFunction() {
-                @Override
-                public LuaValue call() {
-                    return LuaNumber.valueOf(targetEntity.get().deathTime);
-                }
-            });
-
-            superTable.set("getStatusEffectTypes", new ZeroArgFunction() {
-                @Override
-                public LuaValue call() {
+                })
+                .put("getHealth", (entity, arg, arg2) -> LuaNumber.valueOf(entity.getHealth()))
+                .put("getMaxHealth", (entity, arg, arg2) -> LuaNumber.valueOf(entity.getMaxHealth()))
+                .put("getHealthPercentage", (entity, arg, arg2) -> LuaNumber.valueOf(entity.getHealth() / entity.getMaxHealth()))
+                .put("getArmor", (entity, arg, arg2) -> LuaNumber.valueOf(entity.getArmor()))
+                .put("getDeathTime", (entity, arg, arg2) -> LuaNumber.valueOf(entity.deathTime))
+                .put("getStatusEffectTypes", (entity, arg, arg2) -> {
                     LuaTable effects = new LuaTable();
 
                     int i = 1;
-                    for (StatusEffectInstance inst : targetEntity.get().getStatusEffects()) {
+                    for (StatusEffectInstance inst : entity.getStatusEffects()) {
                         effects.set(i, LuaString.valueOf(Registry.STATUS_EFFECT.getId(inst.getEffectType()).toString()));
                         i++;
                     }
 
                     return effects;
-                }
-            });
-
-            superTable.set("getStatusEffect", new OneArgFunction() {
-                @Override
-                public LuaValue call(LuaValue arg) {
+                })
+                .put("getStatusEffect", (entity, arg, arg2) -> {
                     Identifier effectId = Identifier.tryParse(arg.checkjstring());
-                    if(effectId == null)
-                        return NIL;
+                    if (effectId == null)
+                        return LuaValue.NIL;
 
                     StatusEffect statusEffect = Registry.STATUS_EFFECT.get(effectId);
 
-                    if (!targetEntity.get().hasStatusEffect(statusEffect))
-                        return NIL;
+                    if (!entity.hasStatusEffect(statusEffect))
+                        return LuaValue.NIL;
 
                     LuaTable effect = new LuaTable();
-                    StatusEffectInstance instance = targetEntity.get().getStatusEffect(statusEffect);
+                    StatusEffectInstance instance = entity.getStatusEffect(statusEffect);
                     effect.set("duration", instance.getDuration());
                     effect.set("amplifier", instance.getAmplifier());
 
                     return effect;
-                }
-            });
-
-            superTable.set("isSneaky", new ZeroArgFunction() {
-                @Override
-                public LuaValue call() {
-                    return LuaNumber.valueOf(targetEntity.get().isSneaky());
-                }
-            });
-
-            superTable.set("getStuckArrowCount", new ZeroArgFunction() {
-                @Override
-                public LuaValue call() {
-                    return LuaNumber.valueOf(targetEntity.get().getStuckArrowCount());
-                }
-            });
-
-            superTable.set("getStingerCount", new ZeroArgFunction() {
-                @Override
-                public LuaValue call() {
-                    return LuaNumber.valueOf(targetEntity.get().getStingerCount());
-                }
-            });
-
-            superTable.set("isLeftHanded", new ZeroArgFunction() {
-                @Override
-                public LuaValue call() {
-                    return LuaBoolean.valueOf(targetEntity.get().getMainArm() == Arm.LEFT);
-                }
-            });
-
-            superTable.set("isUsingItem", new ZeroArgFunction() {
-                @Override
-                public LuaValue call() {
-                    return LuaBoolean.valueOf(targetEntity.get().isUsingItem());
-                }
-            });
-
-            superTable.set("getActiveHand", new ZeroArgFunction() {
-                @Override
-                public LuaValue call() {
-                    Hand hand = targetEntity.get().getActiveHand();
-                    return hand == null ? NIL : LuaString.valueOf(hand.toString());
-                }
-            });
-
-            superTable.set("getActiveItem", new ZeroArgFunction() {
-                @Override
-                public LuaValue call() {
-                    ItemStack targetStack = targetEntity.get().getActiveItem();
+                })
+                .put("isSneaky", (entity, arg, arg2) -> LuaBoolean.valueOf(entity.isSneaky()))
+                .put("getStuckArrowCount", (entity, arg, arg2) -> LuaNumber.valueOf(entity.getStuckArrowCount()))
+                .put("getStingerCount", (entity, arg, arg2) -> LuaNumber.valueOf(entity.getStingerCount()))
+                .put("isLeftHanded", (entity, arg, arg2) -> LuaBoolean.valueOf(entity.getMainArm() == Arm.LEFT))
+                .put("isUsingItem", (entity, arg, arg2) -> LuaBoolean.valueOf(entity.isUsingItem()))
+                .put("getActiveHand", (entity, arg, arg2) -> {
+                    Hand hand = entity.getActiveHand();
+                    return hand == null ? LuaValue.NIL : LuaString.valueOf(hand.toString());
+                })
+                .put("getActiveItem", (entity, arg, arg2) -> {
+                    ItemStack targetStack = entity.getActiveItem();
                     if (targetStack.equals(ItemStack.EMPTY))
-                        return NIL;
+                        return LuaValue.NIL;
 
                     return ItemStackAPI.getTable(targetStack);
-                }
-            });
+                })
+                .build();
+
+        public LivingEntityAPITable(Supplier<T> targetEntity) {
+            this(targetEntity, FUNCTIONS);
+        }
 
-            return superTable;
+        protected LivingEntityAPITable(Supplier<T> targetEntity, Map<String, ? extends TargetFunction<? super T>> functions) {
+            super(targetEntity, functions);
         }
     }
 }
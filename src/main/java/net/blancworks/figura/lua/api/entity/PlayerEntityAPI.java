@@ -1,5 +1,6 @@
 package net.blancworks.figura.lua.api.entity;
 
+import com.google.common.collect.ImmutableMap;
 import net.blancworks.figura.PlayerData;
 import net.blancworks.figura.PlayerDataManager;
 import net.blancworks.figura.lua.CustomScript;
@@ -14,11 +15,9 @@ import net.minecraft.item.ItemStack;
 import net.minecraft.util.Identifier;
 import org.luaj.vm2.LuaError;
 import org.luaj.vm2.LuaNumber;
-import org.luaj.vm2.LuaTable;
 import org.luaj.vm2.LuaValue;
-import org.luaj.vm2.lib.OneArgFunction;
-import org.luaj.vm2.lib.ZeroArgFunction;
 
+import java.util.Map;
 import java.util.function.Supplier;
 
 public class PlayerEntityAPI {
@@ -34,109 +33,66 @@ public class PlayerEntityAPI {
     }
 
     public static ReadOnlyLuaTable get(PlayerEntity entity) {
-        return new PlayerEntityLuaAPITable(() -> entity);
+        return (ReadOnlyLuaTable) EntityAPI.getTableForEntity(entity);
     }
 
     public static class PlayerEntityLuaAPITable extends LivingEntityAPI.LivingEntityAPITable<PlayerEntity> {
 
-        public PlayerEntityLuaAPITable(Supplier<PlayerEntity> entitySupplier) {
-            super(entitySupplier);
-            super.setTable(getTable());
-        }
-
-        public LuaTable getTable() {
-            LuaTable superTable = super.getTable();
-
-            superTable.set("getHeldItem", new OneArgFunction() {
-                @Override
-                public LuaValue call(LuaValue arg) {
-
+        //Functions shared by every player table, on top of the living entity ones
+        public static final Map<String, TargetFunction<? super PlayerEntity>> FUNCTIONS = new ImmutableMap.Builder<String, TargetFunction<? super PlayerEntity>>()
+                .putAll(LivingEntityAPI.LivingEntityAPITable.FUNCTIONS)
+                .put("getHeldItem", (player, arg, arg2) -> {
                     int hand = arg.checkint();
 
                     ItemStack targetStack;
 
                     if (hand == 1)
-                        targetStack = targetEntity.get().getMainHandStack();
+                        targetStack = player.getMainHandStack();
                     else if (hand == 2)
-                        targetStack = targetEntity.get().getOffHandStack();
+                        targetStack = player.getOffHandStack();
                     else
-                        return NIL;
+                        return LuaValue.NIL;
 
                     if (targetStack.equals(ItemStack.EMPTY))
-                        return NIL;
+                        return LuaValue.NIL;
 
                     return ItemStackAPI.getTable(targetStack);
-                }
-            });
-
-            superTable.set("getFood", new ZeroArgFunction() {
-                @Override
-                public LuaValue call() {
-                    return LuaNumber.valueOf(targetEntity.get().getHungerManager().getFoodLevel());
-                }
-            });
-
-            superTable.set("getSaturation", new ZeroArgFunction() {
-                @Override
-                public LuaValue call() {
-                    return LuaNumber.valueOf(targetEntity.get().getHungerManager().getSaturationLevel());
-                }
-            });
-
-            superTable.set("getExperienceProgress", new ZeroArgFunction() {
-                @Override
-                public LuaValue call() {
-                    return LuaNumber.valueOf(targetEntity.get().experienceProgress);
-                }
-            });
-
-            superTable.set("getExperienceLevel", new ZeroArgFunction() {
-                @Override
-                public LuaValue call() {
-                    return LuaNumber.valueOf(targetEntity.get().experienceLevel);
-                }
-            });
-
-            superTable.set("getTargetedEntity", new ZeroArgFunction() {
-                @Override
-                public LuaValue call() {
-                    if (targetEntity.get() instanceof ClientPlayerEntity) {
+                })
+                .put("getFood", (player, arg, arg2) -> LuaNumber.valueOf(player.getHungerManager().getFoodLevel()))
+                .put("getSaturation", (player, arg, arg2) -> LuaNumber.valueOf(player.getHungerManager().getSaturationLevel()))
+                .put("getExperienceProgress", (player, arg, arg2) -> LuaNumber.valueOf(player.experienceProgress))
+                .put("getExperienceLevel", (player, arg, arg2) -> LuaNumber.valueOf(player.experienceLevel))
+                .put("getTargetedEntity", (player, arg, arg2) -> {
+                    if (player instanceof ClientPlayerEntity) {
                         Entity lookingAt = MinecraftClient.getInstance().targetedEntity;
 
-                        if (lookingAt != null && !lookingAt.isInvisibleTo(targetEntity.get())) {
+                        if (lookingAt != null && !lookingAt.isInvisibleTo(player)) {
                             return EntityAPI.getTableForEntity(lookingAt);
                         }
                     }
 
-                    return NIL;
-                }
-            });
-
-            superTable.set("lastDamageSource", new ZeroArgFunction() {
-                @Override
-                public LuaValue call() {
-                    PlayerData data = PlayerDataManager.getDataForPlayer(targetEntity.get().getUuid());
-                    if (data == null || data.script == null) return NIL;
+                    return LuaValue.NIL;
+                })
+                .put("lastDamageSource", (player, arg, arg2) -> {
+                    PlayerData data = PlayerDataManager.getDataForPlayer(player.getUuid());
+                    if (data == null || data.script == null) return LuaValue.NIL;
 
                     DamageSource ds = data.script.lastDamageSource;
-                    return ds == null ? NIL : LuaValue.valueOf(ds.name);
-                }
-            });
+                    return ds == null ? LuaValue.NIL : LuaValue.valueOf(ds.name);
+                })
+                .put("getStoredValue", (player, arg, arg2) -> {
+                    String key = arg.checkjstring();
 
-            superTable.set("getStoredValue", new OneArgFunction() {
-                @Override
-                public LuaValue call(LuaValue arg1) {
-                    String key = arg1.checkjstring();
-
-                    PlayerData data = PlayerDataManager.getDataForPlayer(targetEntity.get().getUuid());
-                    if (data == null || data.script == null) return NIL;
+                    PlayerData data = PlayerDataManager.getDataForPlayer(player.getUuid());
+                    if (data == null || data.script == null) return LuaValue.NIL;
 
                     LuaValue val = data.script.SHARED_VALUES.get(key);
-                    return val == null ? NIL : val;
-                }
-            });
+                    return val == null ? LuaValue.NIL : val;
+                })
+                .build();
 
-            return superTable;
+        public PlayerEntityLuaAPITable(Supplier<PlayerEntity> entitySupplier) {
+            super(entitySupplier, FUNCTIONS);
         }
 
         @Override
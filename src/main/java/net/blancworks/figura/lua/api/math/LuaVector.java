@@ -11,8 +11,6 @@ import net.minecraft.text.Text;
 import net.minecraft.util.math.*;
 import org.jetbrains.annotations.NotNull;
 import org.luaj.vm2.*;
-import org.luaj.vm2.lib.OneArgFunction;
-import org.luaj.vm2.lib.ZeroArgFunction;
 
 import java.util.Iterator;
 import java.util.Map;
@@ -22,58 +20,21 @@ public class LuaVector extends LuaValue implements Iterable<Float> {
 
     private final float[] values;
 
-    private final Map<String, LuaValue> luaValues = new ImmutableMap.Builder<String, LuaValue>()
-            .put("distanceTo", new OneArgFunction() {
-                @Override
-                public LuaValue call(LuaValue arg1) {
-                    return LuaNumber.valueOf(_distanceTo(arg1));
-                }
-            })
-            .put("getLength", new ZeroArgFunction() {
-                @Override
-                public LuaValue call() {
-                    return LuaNumber.valueOf(_length());
-                }
-            })
-            .put("normalized", new ZeroArgFunction() {
-                @Override
-                public LuaValue call() {
-                    return _normalized();
-                }
-            })
-            .put("dot", new OneArgFunction() {
-                @Override
-                public LuaValue call(LuaValue arg) {
-                    return LuaValue.valueOf(_dot(arg));
-                }
-            })
-            .put("cross", new OneArgFunction() {
-                @Override
-                public LuaValue call(LuaValue arg) {
-                    return _cross(arg);
-                }
-            })
-            .put("angleTo", new OneArgFunction() {
-                @Override
-                public LuaValue call(LuaValue arg) {
-                    return LuaValue.valueOf(_angleTo(arg));
-                }
-            })
-            .put("toRad", new ZeroArgFunction() {
-                @Override
-                public LuaValue call() {
-                    return _toRad();
-                }
-            })
-            .put("toDeg", new ZeroArgFunction() {
-                @Override
-                public LuaValue call() {
-                    return _toDeg();
-                }
-            })
-
+    //Methods shared by every vector, bound to a vector the first time a script looks them up on it
+    private static final Map<String, VectorMethod> FUNCTIONS = new ImmutableMap.Builder<String, VectorMethod>()
+            .put("distanceTo", new VectorMethod(0, true, (self, arg) -> LuaNumber.valueOf(self._distanceTo(arg))))
+            .put("getLength", new VectorMethod(1, false, (self, arg) -> LuaNumber.valueOf(self._length())))
+            .put("normalized", new VectorMethod(2, false, (self, arg) -> self._normalized()))
+            .put("dot", new VectorMethod(3, true, (self, arg) -> LuaValue.valueOf(self._dot(arg))))
+            .put("cross", new VectorMethod(4, true, (self, arg) -> self._cross(arg)))
+            .put("angleTo", new VectorMethod(5, true, (self, arg) -> LuaValue.valueOf(self._angleTo(arg))))
+            .put("toRad", new VectorMethod(6, false, (self, arg) -> self._toRad()))
+            .put("toDeg", new VectorMethod(7, false, (self, arg) -> self._toDeg()))
             .build();
 
+    //methods bound to this vector, indexed by VectorMethod.index, created on first lookup
+    private LuaValue[] boundMethods;
+
     public LuaVector(float... values) {
         if (values.length > 6) {
             throw new IllegalArgumentException("LuaVector cannot have more than 6 fields!");
@@ -367,11 +328,21 @@ public class LuaVector extends LuaValue implements Iterable<Float> {
     }
 
     public LuaValue _functions(String name) {
-        LuaValue v = luaValues.get(name);
+        VectorMethod method = FUNCTIONS.get(name);
 
-        if (v == null)
+        if (method == null)
             return NIL;
-        else return v;
+
+        //racing lookups can both bind, either bound method works
+        LuaValue[] bound = boundMethods;
+        if (bound == null)
+            boundMethods = bound = new LuaValue[FUNCTIONS.size()];
+
+        LuaValue function = bound[method.index];
+        if (function == null)
+            bound[method.index] = function = new BoundMethod(this, method);
+
+        return function;
     }
 
     public double _distanceTo(LuaValue vector) {
@@ -526,6 +497,68 @@ public class LuaVector extends LuaValue implements Iterable<Float> {
         }
     }
 
+    @FunctionalInterface
+    private interface VectorFunction {
+        LuaValue call(LuaVector self, LuaValue arg);
+    }
+
+    private static class VectorMethod {
+        private final int index;
+        private final boolean takesArg;
+        private final VectorFunction function;
+
+        public VectorMethod(int index, boolean takesArg, VectorFunction function) {
+            this.index = index;
+            this.takesArg = takesArg;
+            this.function = function;
+        }
+    }
+
+    //A vector method, bound to the vector it was looked up from.
+    //Works with both "vec.dot(other)" and "vec:dot(other)", the first argument is only taken as self when it is that vector,
+    //and when it isn't the only argument of a method that needs one, so "vec.dot(vec)" still works.
+    private static class BoundMethod extends LuaFunction {
+        private final LuaVector vector;
+        private final VectorMethod method;
+
+        public BoundMethod(LuaVector vector, VectorMethod method) {
+            this.vector = vector;
+            this.method = method;
+        }
+
+        private LuaValue dispatch(int argCount, LuaValue arg1, LuaValue arg2) {
+            if (arg1 == vector && (argCount > 1 || !method.takesArg))
+                return method.function.call(vector, arg2);
+
+            return method.function.call(vector, arg1);
+        }
+
+        @Override
+        public LuaValue call() {
+            return dispatch(0, NIL, NIL);
+        }
+
+        @Override
+        public LuaValue call(LuaValue arg) {
+            return dispatch(1, arg, NIL);
+        }
+
+        @Override
+        public LuaValue call(LuaValue arg1, LuaValue arg2) {
+            return dispatch(2, arg1, arg2);
+        }
+
+        @Override
+        public LuaValue call(LuaValue arg1, LuaValue arg2, LuaValue arg3) {
+            return dispatch(3, arg1, arg2);
+        }
+
+        @Override
+        public Varargs invoke(Varargs args) {
+            return dispatch(args.narg(), args.arg1(), args.arg(2));
+        }
+    }
+
     @NotNull
     @Override
     public Iterator<Float> iterator() {
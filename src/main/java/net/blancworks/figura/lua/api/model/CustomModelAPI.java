@@ -1,9 +1,11 @@
 package net.blancworks.figura.lua.api.model;
 
+import com.google.common.collect.ImmutableMap;
 import net.blancworks.figura.PlayerData;
 import net.blancworks.figura.lua.CustomScript;
 import net.blancworks.figura.lua.api.ReadOnlyLuaTable;
 import net.blancworks.figura.lua.api.ScriptLocalAPITable;
+import net.blancworks.figura.lua.api.SharedFunctionTable;
 import net.blancworks.figura.lua.api.math.LuaVector;
 import net.blancworks.figura.models.CustomModel;
 import net.blancworks.figura.models.CustomModelPart;
@@ -12,9 +14,8 @@ import net.minecraft.client.util.math.Vector4f;
 import net.minecraft.util.Identifier;
 import net.minecraft.util.math.Vec2f;
 import org.luaj.vm2.*;
-import org.luaj.vm2.lib.OneArgFunction;
-import org.luaj.vm2.lib.TwoArgFunction;
-import org.luaj.vm2.lib.ZeroArgFunction;
+
+import java.util.Map;
 
 public class CustomModelAPI {
 
@@ -23,122 +24,54 @@ public class CustomModelAPI {
     }
 
     public static ReadOnlyLuaTable getForScript(CustomScript script) {
-        return new ScriptLocalAPITable(script, new LuaTable() {{
-            if (script.playerData.model != null) {
-                for (CustomModelPart part : script.playerData.model.allParts) {
-                    set(part.name, new CustomModelPartTable(part, script.playerData));
-                }
-            }
-        }});
-    }
+        ScriptLocalAPITable ret = new ScriptLocalAPITable(script);
 
-    private static class CustomModelPartTable extends ReadOnlyLuaTable {
-        CustomModelPart targetPart;
-        PlayerData partOwner;
-
-        public CustomModelPartTable(CustomModelPart part, PlayerData owner) {
-            super();
-            targetPart = part;
-            partOwner = owner;
-            super.setTable(getTable());
+        if (script.playerData.model != null) {
+            for (CustomModelPart part : script.playerData.model.allParts) {
+                ret.javaRawSet(LuaValue.valueOf(part.name), new CustomModelPartTable(part, script.playerData));
+            }
         }
 
-        public LuaTable getTable() {
-            LuaTable ret = new LuaTable();
-
-            int index = 1;
-            for (CustomModelPart child : targetPart.children) {
-                CustomModelPartTable tbl = new CustomModelPartTable(child, partOwner);
-                ret.set(child.name, tbl);
-                ret.set(index++, tbl);
-            }
+        return ret;
+    }
 
-            ret.set("getPos", new ZeroArgFunction() {
-                @Override
-                public LuaValue call() {
-                    return LuaVector.of(targetPart.pos);
-                }
-            });
-
-            ret.set("setPos", new OneArgFunction() {
-                @Override
-                public LuaValue call(LuaValue arg1) {
-                    targetPart.pos = LuaVector.checkOrNew(arg1).asV3f();
-                    return NIL;
-                }
-            });
-
-            ret.set("getPivot", new ZeroArgFunction() {
-                @Override
-                public LuaValue call() {
-                    return LuaVector.of(targetPart.pivot);
-                }
-            });
-
-            ret.set("setPivot", new OneArgFunction() {
-                @Override
-                public LuaValue call(LuaValue arg1) {
-                    targetPart.pivot = LuaVector.checkOrNew(arg1).asV3f();
-                    return NIL;
-                }
-            });
-
-            ret.set("getColor", new ZeroArgFunction() {
-                @Override
-                public LuaValue call() {
-                    return LuaVector.of(targetPart.color);
-                }
-            });
-
-            ret.set("setColor", new OneArgFunction() {
-                @Override
-                public LuaValue call(LuaValue arg1) {
-                    targetPart.color = LuaVector.checkOrNew(arg1).asV3f();
-                    return NIL;
-                }
-            });
-
-            ret.set("getScale", new ZeroArgFunction() {
-                @Override
-                public LuaValue call() {
-                    return LuaVector.of(targetPart.scale);
-                }
-            });
-
-            ret.set("setScale", new OneArgFunction() {
-                @Override
-                public LuaValue call(LuaValue arg1) {
-                    targetPart.scale = LuaVector.checkOrNew(arg1).asV3f();
-                    return NIL;
-                }
-            });
-
-            ret.set("getRot", new ZeroArgFunction() {
-                @Override
-                public LuaValue call() {
-                    return LuaVector.of(targetPart.rot);
-                }
-            });
-
-            ret.set("setRot", new OneArgFunction() {
-                @Override
-                public LuaValue call(LuaValue arg1) {
-                    targetPart.rot = LuaVector.checkOrNew(arg1).asV3f();
-                    return NIL;
-                }
-            });
-
-            ret.set("getUVData", new OneArgFunction() {
-                @Override
-                public LuaValue call(LuaValue arg1) {
+    private static class CustomModelPartTable extends SharedFunctionTable<CustomModelPartTable> {
+        //Functions shared by every part table
+        private static final Map<String, TargetFunction<CustomModelPartTable>> FUNCTIONS = new ImmutableMap.Builder<String, TargetFunction<CustomModelPartTable>>()
+                .put("getPos", (self, arg1, arg2) -> LuaVector.of(self.targetPart.pos))
+                .put("setPos", (self, arg1, arg2) -> {
+                    self.targetPart.pos = LuaVector.checkOrNew(arg1).asV3f();
+                    return LuaValue.NIL;
+                })
+                .put("getPivot", (self, arg1, arg2) -> LuaVector.of(self.targetPart.pivot))
+                .put("setPivot", (self, arg1, arg2) -> {
+                    self.targetPart.pivot = LuaVector.checkOrNew(arg1).asV3f();
+                    return LuaValue.NIL;
+                })
+                .put("getColor", (self, arg1, arg2) -> LuaVector.of(self.targetPart.color))
+                .put("setColor", (self, arg1, arg2) -> {
+                    self.targetPart.color = LuaVector.checkOrNew(arg1).asV3f();
+                    return LuaValue.NIL;
+                })
+                .put("getScale", (self, arg1, arg2) -> LuaVector.of(self.targetPart.scale))
+                .put("setScale", (self, arg1, arg2) -> {
+                    self.targetPart.scale = LuaVector.checkOrNew(arg1).asV3f();
+                    return LuaValue.NIL;
+                })
+                .put("getRot", (self, arg1, arg2) -> LuaVector.of(self.targetPart.rot))
+                .put("setRot", (self, arg1, arg2) -> {
+                    self.targetPart.rot = LuaVector.checkOrNew(arg1).asV3f();
+                    return LuaValue.NIL;
+                })
+                .put("getUVData", (self, arg1, arg2) -> {
                     try {
                         CustomModelPart.UV uv = CustomModelPart.UV.valueOf(arg1.checkjstring());
 
                         if (uv == CustomModelPart.UV.ALL)
                             throw new LuaError("Cannot get UV data for ALL faces at once");
 
-                        CustomModelPart.uvData data = targetPart.UVCustomizations.get(uv);
-                        if (data == null) return NIL;
+                        CustomModelPart.uvData data = self.targetPart.UVCustomizations.get(uv);
+                        if (data == null) return LuaValue.NIL;
 
                         Vec2f offset = data.uvOffset;
                         Vec2f size = data.uvSize;
@@ -147,12 +80,10 @@ public class CustomModelAPI {
                     } catch (Exception ignored) {
                         throw new LuaError("UV Face not found!");
                     }
-                }
-            });
+                })
+                .put("setUVData", (self, arg1, arg2) -> {
+                    CustomModelPart targetPart = self.targetPart;
 
-            ret.set("setUVData", new TwoArgFunction() {
-                @Override
-                public LuaValue call(LuaValue arg1, LuaValue arg2) {
                     try {
                         CustomModelPart.UV uv = CustomModelPart.UV.valueOf(arg1.checkjstring());
 
@@ -188,55 +119,24 @@ public class CustomModelAPI {
                     } catch (Exception ignored) {
                         throw new LuaError("UV Face not found!");
                     }
-                    return NIL;
-                }
-            });
-
-            ret.set("getTextureSize", new ZeroArgFunction() {
-                @Override
-                public LuaValue call() {
-                    Vec2f uv = targetPart.texSize;
-                    return LuaVector.of(uv);
-                }
-            });
-
-            ret.set("setTextureSize", new OneArgFunction() {
-                @Override
-                public LuaValue call(LuaValue arg) {
-                    targetPart.applyUVMods(LuaVector.checkOrNew(arg).asV2f());
-                    return NIL;
-                }
-            });
-
-            ret.set("getUV", new ZeroArgFunction() {
-                @Override
-                public LuaValue call() {
-                    Vec2f uv = targetPart.uvOffset;
-                    return LuaVector.of(uv);
-                }
-            });
-
-            ret.set("setUV", new OneArgFunction() {
-                @Override
-                public LuaValue call(LuaValue arg) {
-                    LuaVector vec = LuaVector.checkOrNew(arg);
-                    targetPart.uvOffset = new Vec2f(vec.x(), vec.y());
-                    return NIL;
-                }
-            });
-
-            ret.set("getParentType", new ZeroArgFunction() {
-                @Override
-                public LuaValue call() {
-                    return LuaString.valueOf(targetPart.parentType.toString());
-                }
-            });
-
-            ret.set("setParentType", new OneArgFunction() {
-                @Override
-                public LuaValue call(LuaValue arg1) {
-                    CustomModel model = partOwner.model;
-                    
+                    return LuaValue.NIL;
+                })
+                .put("getTextureSize", (self, arg1, arg2) -> LuaVector.of(self.targetPart.texSize))
+                .put("setTextureSize", (self, arg1, arg2) -> {
+                    self.targetPart.applyUVMods(LuaVector.checkOrNew(arg1).asV2f());
+                    return LuaValue.NIL;
+                })
+                .put("getUV", (self, arg1, arg2) -> LuaVector.of(self.targetPart.uvOffset))
+                .put("setUV", (self, arg1, arg2) -> {
+                    LuaVector vec = LuaVector.checkOrNew(arg1);
+                    self.targetPart.uvOffset = new Vec2f(vec.x(), vec.y());
+                    return LuaValue.NIL;
+                })
+                .put("getParentType", (self, arg1, arg2) -> LuaString.valueOf(self.targetPart.parentType.toString()))
+                .put("setParentType", (self, arg1, arg2) -> {
+                    CustomModelPart targetPart = self.targetPart;
+                    CustomModel model = self.partOwner.model;
+
                     if (targetPart.isSpecial())
                         model.removeSpecialPart(targetPart);
 
@@ -249,77 +149,33 @@ public class CustomModelAPI {
                         targetPart.parentType = CustomModelPart.ParentType.Model;
                     }
 
-                    return NIL;
-                }
-            });
-
-            ret.set("getMimicMode", new ZeroArgFunction() {
-                @Override
-                public LuaValue call() {
-                    return LuaBoolean.valueOf(targetPart.isMimicMode);
-                }
-            });
-
-            ret.set("setMimicMode", new OneArgFunction() {
-                @Override
-                public LuaValue call(LuaValue arg1) {
-                    targetPart.isMimicMode = arg1.checkboolean();
-                    return NIL;
-                }
-            });
-
-            ret.set("getEnabled", new ZeroArgFunction() {
-                @Override
-                public LuaValue call() {
-                    return LuaBoolean.valueOf(targetPart.visible);
-                }
-            });
-
-            ret.set("setEnabled", new OneArgFunction() {
-                @Override
-                public LuaValue call(LuaValue arg) {
-                    targetPart.visible = arg.checkboolean();
-                    return null;
-                }
-            });
-
-            ret.set("getShader", new ZeroArgFunction() {
-                @Override
-                public LuaValue call() {
-                    return LuaString.valueOf(targetPart.shaderType.toString());
-                }
-            });
-
-            ret.set("setShader", new OneArgFunction() {
-                @Override
-                public LuaValue call(LuaValue arg1) {
+                    return LuaValue.NIL;
+                })
+                .put("getMimicMode", (self, arg1, arg2) -> LuaBoolean.valueOf(self.targetPart.isMimicMode))
+                .put("setMimicMode", (self, arg1, arg2) -> {
+                    self.targetPart.isMimicMode = arg1.checkboolean();
+                    return LuaValue.NIL;
+                })
+                .put("getEnabled", (self, arg1, arg2) -> LuaBoolean.valueOf(self.targetPart.visible))
+                .put("setEnabled", (self, arg1, arg2) -> {
+                    self.targetPart.visible = arg1.checkboolean();
+                    return LuaValue.NIL;
+                })
+                .put("getShader", (self, arg1, arg2) -> LuaString.valueOf(self.targetPart.shaderType.toString()))
+                .put("setShader", (self, arg1, arg2) -> {
                     try {
-                        targetPart.shaderType = CustomModelPart.ShaderType.valueOf(arg1.checkjstring());
+                        self.targetPart.shaderType = CustomModelPart.ShaderType.valueOf(arg1.checkjstring());
                     } catch (Exception ignored) {
-                        targetPart.shaderType = CustomModelPart.ShaderType.None;
+                        self.targetPart.shaderType = CustomModelPart.ShaderType.None;
                     }
 
-                    return NIL;
-                }
-            });
-
-            ret.set("setRenderLayer", new OneArgFunction() {
-                @Override
-                public LuaValue call(LuaValue arg1) {
-                    return NIL;
-                }
-            });
-            
-            ret.set("getTexture", new ZeroArgFunction() {
-                @Override
-                public LuaValue call() {
-                    return LuaString.valueOf(targetPart.textureType.toString());
-                }
-            });
-
-            ret.set("setTexture", new TwoArgFunction() {
-                @Override
-                public LuaValue call(LuaValue arg1, LuaValue arg2) {
+                    return LuaValue.NIL;
+                })
+                .put("setRenderLayer", (self, arg1, arg2) -> LuaValue.NIL)
+                .put("getTexture", (self, arg1, arg2) -> LuaString.valueOf(self.targetPart.textureType.toString()))
+                .put("setTexture", (self, arg1, arg2) -> {
+                    CustomModelPart targetPart = self.targetPart;
+
                     try {
                         targetPart.textureType = CustomModelPart.TextureType.valueOf(arg1.checkjstring());
 
@@ -329,124 +185,87 @@ public class CustomModelAPI {
                         targetPart.textureType = CustomModelPart.TextureType.Custom;
                     }
 
-                    return NIL;
-                }
-            });
-
-            ret.set("getExtraTexEnabled", new ZeroArgFunction() {
-                @Override
-                public LuaValue call() {
-                    return LuaBoolean.valueOf(targetPart.extraTex);
-                }
-            });
-
-            ret.set("setExtraTexEnabled", new OneArgFunction() {
-                @Override
-                public LuaValue call(LuaValue arg) {
-                    targetPart.extraTex = arg.checkboolean();
-                    return null;
-                }
-            });
-
-            ret.set("getCullEnabled", new ZeroArgFunction() {
-                @Override
-                public LuaValue call() {
-                    return LuaBoolean.valueOf(targetPart.cull);
-                }
-            });
-
-            ret.set("setCullEnabled", new OneArgFunction() {
-                @Override
-                public LuaValue call(LuaValue arg) {
-                    targetPart.cull = arg.checkboolean();
-                    return null;
-                }
-            });
-
-            ret.set("partToWorldPos", new OneArgFunction() {
-                @Override
-                public LuaValue call(LuaValue arg1) {
+                    return LuaValue.NIL;
+                })
+                .put("getExtraTexEnabled", (self, arg1, arg2) -> LuaBoolean.valueOf(self.targetPart.extraTex))
+                .put("setExtraTexEnabled", (self, arg1, arg2) -> {
+                    self.targetPart.extraTex = arg1.checkboolean();
+                    return LuaValue.NIL;
+                })
+                .put("getCullEnabled", (self, arg1, arg2) -> LuaBoolean.valueOf(self.targetPart.cull))
+                .put("setCullEnabled", (self, arg1, arg2) -> {
+                    self.targetPart.cull = arg1.checkboolean();
+                    return LuaValue.NIL;
+                })
+                .put("partToWorldPos", (self, arg1, arg2) -> {
                     LuaVector v = LuaVector.checkOrNew(arg1);
 
                     Vector4f v4f = new Vector4f(v.x() / 16f, v.y() / -16f, v.z() / 16f, 1f);
 
-                    v4f.transform(targetPart.lastModelMatrix);
+                    v4f.transform(self.targetPart.lastModelMatrix);
 
                     return LuaVector.of(new Vector3f(v4f.getX(), v4f.getY(), v4f.getZ()));
-                }
-            });
-
-            ret.set("partToWorldDir", new OneArgFunction() {
-                @Override
-                public LuaValue call(LuaValue arg1) {
+                })
+                .put("partToWorldDir", (self, arg1, arg2) -> {
                     LuaVector v = LuaVector.checkOrNew(arg1);
 
                     Vector3f v3f = new Vector3f(v.x(), -v.y(), v.z());
 
-                    v3f.transform(targetPart.lastNormalMatrix);
+                    v3f.transform(self.targetPart.lastNormalMatrix);
 
                     return LuaVector.of(v3f);
-                }
-            });
-
-            ret.set("worldToPartPos", new OneArgFunction() {
-                @Override
-                public LuaValue call(LuaValue arg1) {
+                })
+                .put("worldToPartPos", (self, arg1, arg2) -> {
                     LuaVector v = LuaVector.checkOrNew(arg1);
 
                     Vector4f v4f = new Vector4f(v.x(), v.y(), v.z(), 1f);
 
-                    v4f.transform(targetPart.lastModelMatrixInverse);
+                    v4f.transform(self.targetPart.lastModelMatrixInverse);
 
                     return LuaVector.of(new Vector3f(v4f.getX() * 16f, v4f.getY() * -16f, v4f.getZ() * 16f));
-                }
-            });
-
-            ret.set("worldToPartDir", new OneArgFunction() {
-                @Override
-                public LuaValue call(LuaValue arg1) {
+                })
+                .put("worldToPartDir", (self, arg1, arg2) -> {
                     LuaVector v = LuaVector.checkOrNew(arg1);
 
                     Vector3f v3f = new Vector3f(v.x(), v.y(), v.z());
 
-                    v3f.transform(targetPart.lastNormalMatrixInverse);
+                    v3f.transform(self.targetPart.lastNormalMatrixInverse);
 
                     return LuaVector.of(new Vector3f(v3f.getX(), -v3f.getY(), v3f.getZ()));
-                }
-            });
-
-            ret.set("getOpacity", new ZeroArgFunction() {
-                @Override
-                public LuaValue call() {
-                    return LuaNumber.valueOf(targetPart.alpha);
-                }
-            });
-
-            ret.set("setOpacity", new OneArgFunction() {
-                @Override
-                public LuaValue call(LuaValue arg1) {
-                    targetPart.alpha = Math.max(0f, Math.min(arg1.checknumber().tofloat(), 1f));
-                    return NIL;
-                }
-            });
-
-            ret.set("getType", new ZeroArgFunction() {
-                @Override
-                public LuaValue call() {
-                    return LuaValue.valueOf(targetPart.getPartType().toString());
-                }
-            });
-
-            ret.set("getName", new ZeroArgFunction() {
-                @Override
-                public LuaValue call() {
-                    return LuaValue.valueOf(targetPart.name);
-                }
-            });
-
-            ret.set("part", LuaValue.userdataOf(targetPart));
-
-            return ret;
+                })
+                .put("getOpacity", (self, arg1, arg2) -> LuaNumber.valueOf(self.targetPart.alpha))
+                .put("setOpacity", (self, arg1, arg2) -> {
+                    self.targetPart.alpha = Math.max(0f, Math.min(arg1.checknumber().tofloat(), 1f));
+                    return LuaValue.NIL;
+                })
+                .put("getType", (self, arg1, arg2) -> LuaValue.valueOf(self.targetPart.getPartType().toString()))
+                .put("getName", (self, arg1, arg2) -> LuaValue.valueOf(self.targetPart.name))
+                .build();
+
+        CustomModelPart targetPart;
+        PlayerData partOwner;
+
+        public CustomModelPartTable(CustomModelPart part, PlayerData owner) {
+            super(FUNCTIONS);
+            targetPart = part;
+            partOwner = owner;
+
+            //children are reachable both by name and by index
+            presize(part.children.size(), FUNCTIONS.size() + part.children.size() + 1);
+
+            int index = 1;
+            for (CustomModelPart child : part.children) {
+                CustomModelPartTable tbl = new CustomModelPartTable(child, owner);
+                javaRawSet(LuaValue.valueOf(child.name), tbl);
+                javaRawSet(index++, tbl);
+            }
+
+            javaRawSet(LuaValue.valueOf("part"), LuaValue.userdataOf(part));
+        }
+
+        @Override
+        protected CustomModelPartTable getTarget() {
+            return this;
         }
     }
 
@@ -1,14 +1,11 @@
 package net.blancworks.figura.lua.api.network;
 
 import com.google.common.io.LittleEndianDataInputStream;
-import com.google.common.io.LittleEndianDataOutputStream;
-import net.blancworks.figura.lua.api.ReadOnlyLuaTable;
+import net.blancworks.figura.network.messages.MessageBuffer;
 import org.luaj.vm2.*;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
-import java.util.LinkedList;
-import java.util.Queue;
 
 public class LuaNetworkReadWriter {
 
@@ -20,22 +17,47 @@ public class LuaNetworkReadWriter {
     public static final byte NIL_ID = 5;
 
 
-    public static void writeLuaValue(LuaValue val, LittleEndianDataOutputStream stream) throws Exception {
+    public static void writeLuaValue(LuaValue val, MessageBuffer buffer) throws Exception {
         if (val.isint()) {
-            writeLuaValue(val.checkinteger(), stream);
+            writeLuaValue(val.checkinteger(), buffer);
         } else if (val.isnumber()) {
-            writeLuaValue(val.checkdouble(), stream);
+            writeLuaValue(val.checkdouble(), buffer);
         } else if (val.isboolean()) {
-            writeLuaValue(val.checkboolean(), stream);
+            writeLuaValue(val.checkboolean(), buffer);
         } else if (val.isstring()) {
-            writeLuaValue(val.checkstring(), stream);
+            writeLuaValue(val.checkstring(), buffer);
         } else if (val.istable()) {
-            writeLuaValue(val.checktable(), stream);
+            writeLuaValue(val.checktable(), buffer);
         } else if (val.isnil()) {
-            stream.writeByte(NIL_ID);
+            buffer.writeByte(NIL_ID);
         }
     }
 
+    //How many bytes writing the value takes, without writing it.
+    public static int getEncodedSize(LuaValue val) {
+        if (val.isint() || val.isnumber()) {
+            return 5;
+        } else if (val.isboolean()) {
+            return 2;
+        } else if (val.isstring()) {
+            return 3 + val.checkstring().length();
+        } else if (val.istable()) {
+            int size = 3;
+            LuaTable table = val.checktable();
+
+            for (Varargs n = table.next(LuaValue.NIL); !n.arg1().isnil(); n = table.next(n.arg1())) {
+                if (!n.arg1().istable())
+                    size += getEncodedSize(n.arg1()) + getEncodedSize(n.arg(2));
+            }
+
+            return size;
+        } else if (val.isnil()) {
+            return 1;
+        }
+
+        return 0;
+    }
+
     public static LuaValue readLuaValue(LittleEndianDataInputStream stream) throws IOException {
         byte type = stream.readByte();
 
@@ -54,47 +76,44 @@ public class LuaNetworkReadWriter {
         return LuaValue.NIL;
     }
 
-    public static void writeLuaValue(LuaTable val, LittleEndianDataOutputStream stream) throws Exception {
-        stream.writeByte(TABLE_ID);//Write ID
+    public static void writeLuaValue(LuaTable val, MessageBuffer buffer) throws Exception {
+        buffer.writeByte(TABLE_ID);//Write ID
 
-        Queue<LuaValue> keys = new LinkedList<>();
-        Queue<LuaValue> values = new LinkedList<>();
+        //Entries are written as they're found, the count is filled in after
+        int countPosition = buffer.position();
+        buffer.writeShort(0);
 
-        // Write value
+        int count = 0;
         for (Varargs n = val.next(LuaValue.NIL); !n.arg1().isnil(); n = val.next(n.arg1())) {
             LuaValue key = n.arg1();
-            LuaValue value = n.arg(2);
 
             if (key.istable())
                 continue;
 
-            keys.add(key);
-            values.add(value);
+            writeLuaValue(key, buffer); //Write index of this entry
+            writeLuaValue(n.arg(2), buffer); //Write entry.
+            count++;
         }
 
-        stream.writeShort(keys.size());
-        while (keys.size() > 0) {
-            writeLuaValue(keys.poll(), stream); //Write index of this entry
-            writeLuaValue(values.poll(), stream); //Write entry.
-        }
+        buffer.setShort(countPosition, count);
     }
 
-    public static void writeLuaValue(LuaInteger val, LittleEndianDataOutputStream stream) throws IOException {
-        stream.writeByte(INT_ID);//Write ID
-        stream.writeInt(val.v);// Write value
+    public static void writeLuaValue(LuaInteger val, MessageBuffer buffer) {
+        buffer.writeByte(INT_ID);//Write ID
+        buffer.writeInt(val.v);// Write value
     }
 
-    public static void writeLuaValue(double val, LittleEndianDataOutputStream stream) throws IOException {
-        stream.writeByte(FLOAT_ID);//Write ID
-        stream.writeFloat((float) val);// Write value
+    public static void writeLuaValue(double val, MessageBuffer buffer) {
+        buffer.writeByte(FLOAT_ID);//Write ID
+        buffer.writeFloat((float) val);// Write value
     }
 
-    public static void writeLuaValue(boolean val, LittleEndianDataOutputStream stream) throws IOException {
-        stream.writeByte(BOOL_ID);//Write ID
-        stream.writeBoolean(val);// Write value
+    public static void writeLuaValue(boolean val, MessageBuffer buffer) {
+        buffer.writeByte(BOOL_ID);//Write ID
+        buffer.writeBoolean(val);// Write value
     }
 
-    public static void writeLuaValue(LuaString val, LittleEndianDataOutputStream stream) throws Exception {
+    public static void writeLuaValue(LuaString val, MessageBuffer buffer) throws Exception {
         String js = val.checkjstring();
 
         byte[] data = js.getBytes(StandardCharsets.US_ASCII);
@@ -103,9 +122,9 @@ public class LuaNetworkReadWriter {
             throw new Exception("String is too large to send! Max string size is 1016 characters.");
         }
 
-        stream.writeByte(STRING_ID); //Write ID
-        stream.writeShort(data.length); // Write value
-        stream.write(data);
+        buffer.writeByte(STRING_ID); //Write ID
+        buffer.writeShort(data.length); // Write value
+        buffer.write(data);
     }
 
     public static LuaTable readLuaTable(LittleEndianDataInputStream stream) throws IOException {
@@ -60,7 +60,7 @@ public class NetworkAPI {
                         lp.functionID = id;
 
                         if (!targetScript.playerData.isLocalAvatar)
-                            targetScript.outgoingPingQueue.add(lp);
+                            targetScript.pingScheduler.queue(lp);
                     } catch (Exception e) {
                         e.printStackTrace();
                         throw new LuaError("Failed to send ping! Make sure the ping is registered before sending it!");
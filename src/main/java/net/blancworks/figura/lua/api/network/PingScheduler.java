@@ -0,0 +1,152 @@
+package net.blancworks.figura.lua.api.network;
+
+import net.blancworks.figura.FiguraMod;
+import net.blancworks.figura.config.ConfigManager.Config;
+import net.blancworks.figura.lua.CustomScript;
+import net.blancworks.figura.trust.TrustContainer;
+import net.minecraft.util.math.MathHelper;
+
+import java.util.*;
+
+//Decides which of a script's pings are sent each tick, so a single avatar can't flood the connection for everyone.
+//Sending is limited by a ping budget from trust and a byte budget from the config, both refilled every tick.
+//Pings to the same function within a tick are merged, keeping the last value.
+//Reliable pings wait in line until there's budget for them, lossy pings that don't fit are dropped,
+//since they're meant for things like animation sync, where a newer ping is sure to follow.
+public class PingScheduler {
+    //Receivers read at most this many pings out of one message, more would be lost.
+    public static final int MAX_PINGS_PER_TICK = 32;
+    //Reliable pings waiting for budget. Past this, new pings are dropped until the queue catches up.
+    public static final int MAX_QUEUED_PINGS = 256;
+
+    private final CustomScript script;
+
+    private final ArrayDeque<CustomScript.LuaPing> reliable = new ArrayDeque<>();
+    private final LinkedHashMap<Short, CustomScript.LuaPing> lossy = new LinkedHashMap<>();
+    //Reliable pings queued since the last send, by function, so repeats are merged instead of queued again
+    private final Map<Short, CustomScript.LuaPing> reliableThisTick = new HashMap<>();
+    private final Set<Short> lossyFunctions = new HashSet<>();
+
+    private float sendBudget = 0f;
+    private float byteBudget = 0f;
+    private float maxBytes = 0f;
+    private float receiveBudget = 0f;
+    private boolean warned = false;
+
+    public PingScheduler(CustomScript script) {
+        this.script = script;
+    }
+
+    //Refills the budgets, once per tick.
+    public synchronized void tick() {
+        if (script.playerData == null)
+            return;
+
+        float pings = script.playerData.getTrustContainer().getTrust(TrustContainer.Trust.PINGS);
+        maxBytes = Math.max((int) Config.PING_BYTES.value, 0);
+
+        sendBudget = MathHelper.clamp(sendBudget + (1 / 20f * pings), 0, pings);
+        receiveBudget = MathHelper.clamp(receiveBudget + (1 / 20f * pings), 0, pings);
+        byteBudget = MathHelper.clamp(byteBudget + (1 / 20f * maxBytes), 0, maxBytes);
+    }
+
+    public synchronized void setLossy(short functionID, boolean isLossy) {
+        if (isLossy)
+            lossyFunctions.add(functionID);
+        else
+            lossyFunctions.remove(functionID);
+    }
+
+    public synchronized void queue(CustomScript.LuaPing ping) {
+        if (lossyFunctions.contains(ping.functionID)) {
+            lossy.put(ping.functionID, ping);
+            return;
+        }
+
+        CustomScript.LuaPing pending = reliableThisTick.get(ping.functionID);
+        if (pending != null) {
+            pending.args = ping.args;
+            return;
+        }
+
+        if (reliable.size() >= MAX_QUEUED_PINGS) {
+            if (!warned) {
+                warned = true;
+                FiguraMod.LOGGER.warn("Avatar is sending pings faster than it's allowed to, dropping pings");
+            }
+            return;
+        }
+
+        reliable.add(ping);
+        reliableThisTick.put(ping.functionID, ping);
+    }
+
+    /**
+     * Takes the pings to send this tick, reliable ones first, paying for them out of the budgets.
+     *
+     * @return the pings to send, in the order they should be handled
+     */
+    public synchronized List<CustomScript.LuaPing> takeReady() {
+        List<CustomScript.LuaPing> ready = new ArrayList<>();
+
+        while (!reliable.isEmpty() && ready.size() < MAX_PINGS_PER_TICK && tryPay(reliable.peek()))
+            ready.add(reliable.poll());
+
+        for (CustomScript.LuaPing ping : lossy.values()) {
+            if (ready.size() >= MAX_PINGS_PER_TICK)
+                break;
+
+            if (tryPay(ping))
+                ready.add(ping);
+        }
+
+        lossy.clear();
+        reliableThisTick.clear();
+
+        if (reliable.isEmpty())
+            warned = false;
+
+        return ready;
+    }
+
+    private boolean tryPay(CustomScript.LuaPing ping) {
+        //function id + arguments
+        int size = 2 + LuaNetworkReadWriter.getEncodedSize(ping.args);
+
+        //a ping bigger than the whole byte budget still goes out, once the budget is full
+        if (sendBudget < 1 || (maxBytes > 0 && byteBudget < Math.min(size, maxBytes)))
+            return false;
+
+        sendBudget--;
+        if (maxBytes > 0)
+            byteBudget -= size;
+        return true;
+    }
+
+    /**
+     * Takes budget for pings received from the owner of this script.
+     *
+     * @param count how many pings were received
+     * @return how many of them can be handled, the rest are dropped
+     */
+    public synchronized int takeReceiveBudget(int count) {
+        int allowed = Math.min(count, (int) receiveBudget);
+        receiveBudget -= allowed;
+        return allowed;
+    }
+
+    public synchronized float getSendBudget() {
+        return sendBudget;
+    }
+
+    public synchronized int getQueuedCount() {
+        return reliable.size() + lossy.size();
+    }
+
+    public synchronized void clear() {
+        reliable.clear();
+        lossy.clear();
+        reliableThisTick.clear();
+        lossyFunctions.clear();
+    }
+}
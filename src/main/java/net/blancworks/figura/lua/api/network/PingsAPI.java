@@ -15,6 +15,16 @@ public class PingsAPI {
         return new PingsAPILuaTable(script);
     }
 
+    //Resolves the id of a ping, from a function in the ping table, or the name of a ping registered through the network API.
+    public static Short getPingID(CustomScript script, LuaValue ping) {
+        if (ping instanceof PingFunction)
+            return script.newFunctionIDMap.inverse().get(((PingFunction) ping).func);
+        if (ping.isstring())
+            return script.functionIDMap.inverse().get(ping.tojstring());
+
+        return null;
+    }
+
     private static class PingsAPILuaTable extends LuaTable {
         private final CustomScript targetScript;
 
@@ -68,7 +78,7 @@ public class PingsAPI {
                 lp.functionID = id;
 
                 if (!targetScript.playerData.isLocalAvatar)
-                    targetScript.outgoingPingQueue.add(lp);
+                    targetScript.pingScheduler.queue(lp);
             } catch (Exception e) {
                 e.printStackTrace();
                 throw new LuaError("Something went wrong while sending ping!");
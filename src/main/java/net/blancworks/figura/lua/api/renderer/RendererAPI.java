@@ -98,16 +98,8 @@ public class RendererAPI {
             set("renderItem", new VarArgFunction() {
                 @Override
                 public Varargs onInvoke(Varargs args) {
-
-                    ItemStack stack = ItemStackAPI.checkOrCreateItemStack(args.arg(1));
                     CustomModelPart parent = CustomModelAPI.checkCustomModelPart(args.arg(2));
-                    ModelTransformation.Mode mode = !args.arg(3).isnil() ? ModelTransformation.Mode.valueOf(args.arg(3).checkjstring()) : ModelTransformation.Mode.FIXED;
-                    boolean emissive = !args.arg(4).isnil() && args.arg(4).checkboolean();
-                    Vector3f pos = args.arg(5).isnil() ? null : LuaVector.checkOrNew(args.arg(5)).asV3f();
-                    Vector3f rot = args.arg(6).isnil() ? null : LuaVector.checkOrNew(args.arg(6)).asV3f();
-                    Vector3f scale = args.arg(7).isnil() ? null : LuaVector.checkOrNew(args.arg(7)).asV3f();
-
-                    parent.renderTasks.add(new ItemRenderTask(stack, mode, emissive, pos, rot, scale));
+                    script.addRenderTask(parent, checkItemTask(args, 1));
                     return NIL;
                 }
             });
@@ -118,14 +110,8 @@ public class RendererAPI {
                     if (script.renderMode == CustomScript.RenderType.WORLD_RENDER)
                         throw new LuaError("Cannot render block on world render!");
 
-                    BlockState state = BlockStateAPI.checkOrCreateBlockState(args.arg(1));
                     CustomModelPart parent = CustomModelAPI.checkCustomModelPart(args.arg(2));
-                    boolean emissive = !args.arg(3).isnil() && args.arg(3).checkboolean();
-                    Vector3f pos = args.arg(4).isnil() ? null : LuaVector.checkOrNew(args.arg(4)).asV3f();
-                    Vector3f rot = args.arg(5).isnil() ? null : LuaVector.checkOrNew(args.arg(5)).asV3f();
-                    Vector3f scale = args.arg(6).isnil() ? null : LuaVector.checkOrNew(args.arg(6)).asV3f();
-
-                    parent.renderTasks.add(new BlockRenderTask(state, emissive, pos, rot, scale));
+                    script.addRenderTask(parent, checkBlockTask(args, 1));
                     return NIL;
                 }
             });
@@ -136,29 +122,62 @@ public class RendererAPI {
                     if (script.renderMode == CustomScript.RenderType.WORLD_RENDER)
                         throw new LuaError("Cannot render text on world render!");
 
-                    String arg1 = TextUtils.noBadges4U(args.arg(1).checkjstring()).replaceAll("[\n\r]", " ");
+                    CustomModelPart parent = CustomModelAPI.checkCustomModelPart(args.arg(2));
+                    script.addRenderTask(parent, checkTextTask(args, 1));
+                    return NIL;
+                }
+            });
 
-                    if (arg1.length() > 65535)
-                        throw new LuaError("Text too long - oopsie!");
+            //Same as the render functions, but the task stays until it's removed, instead of being cleared every frame.
+            //Setting a task again with the same id updates it, and does nothing if nothing changed.
+            set("setItemTask", new VarArgFunction() {
+                @Override
+                public Varargs onInvoke(Varargs args) {
+                    CustomModelPart parent = CustomModelAPI.checkCustomModelPart(args.arg(3));
+                    return LuaBoolean.valueOf(script.setRenderTask(args.arg1().checkjstring(), parent, checkItemTask(args, 2)));
+                }
+            });
 
-                    Text text;
-                    try {
-                        text = Text.Serializer.fromJson(new StringReader(arg1));
+            set("setBlockTask", new VarArgFunction() {
+                @Override
+                public Varargs onInvoke(Varargs args) {
+                    if (script.renderMode == CustomScript.RenderType.WORLD_RENDER)
+                        throw new LuaError("Cannot render block on world render!");
 
-                        if (text == null)
-                            throw new Exception("Error parsing JSON string");
-                    } catch (Exception ignored) {
-                        text = new LiteralText(arg1);
-                    }
+                    CustomModelPart parent = CustomModelAPI.checkCustomModelPart(args.arg(3));
+                    return LuaBoolean.valueOf(script.setRenderTask(args.arg1().checkjstring(), parent, checkBlockTask(args, 2)));
+                }
+            });
 
-                    CustomModelPart parent = CustomModelAPI.checkCustomModelPart(args.arg(2));
-                    boolean emissive = !args.arg(3).isnil() && args.arg(3).checkboolean();
-                    Vector3f pos = args.arg(4).isnil() ? null : LuaVector.checkOrNew(args.arg(4)).asV3f();
-                    Vector3f rot = args.arg(5).isnil() ? null : LuaVector.checkOrNew(args.arg(5)).asV3f();
-                    Vector3f scale = args.arg(6).isnil() ? null : LuaVector.checkOrNew(args.arg(6)).asV3f();
+            set("setTextTask", new VarArgFunction() {
+                @Override
+                public Varargs onInvoke(Varargs args) {
+                    if (script.renderMode == CustomScript.RenderType.WORLD_RENDER)
+                        throw new LuaError("Cannot render text on world render!");
+
+                    CustomModelPart parent = CustomModelAPI.checkCustomModelPart(args.arg(3));
+                    return LuaBoolean.valueOf(script.setRenderTask(args.arg1().checkjstring(), parent, checkTextTask(args, 2)));
+                }
+            });
+
+            set("removeTask", new OneArgFunction() {
+                @Override
+                public LuaValue call(LuaValue arg) {
+                    return LuaBoolean.valueOf(script.removeRenderTask(arg.checkjstring()));
+                }
+            });
 
-                    parent.renderTasks.add(new TextRenderTask(text, emissive, pos, rot, scale));
+            set("hasTask", new OneArgFunction() {
+                @Override
+                public LuaValue call(LuaValue arg) {
+                    return LuaBoolean.valueOf(script.hasRenderTask(arg.checkjstring()));
+                }
+            });
 
+            set("clearTasks", new ZeroArgFunction() {
+                @Override
+                public LuaValue call() {
+                    script.clearRenderTasks();
                     return NIL;
                 }
             });
@@ -226,4 +245,50 @@ public class RendererAPI {
 
         }});
     }
+
+    //Task arguments start at the given index, the part always comes right after the first one.
+    private static ItemRenderTask checkItemTask(Varargs args, int i) {
+        ItemStack stack = ItemStackAPI.checkOrCreateItemStack(args.arg(i));
+        ModelTransformation.Mode mode = !args.arg(i + 2).isnil() ? ModelTransformation.Mode.valueOf(args.arg(i + 2).checkjstring()) : ModelTransformation.Mode.FIXED;
+        boolean emissive = !args.arg(i + 3).isnil() && args.arg(i + 3).checkboolean();
+        Vector3f pos = args.arg(i + 4).isnil() ? null : LuaVector.checkOrNew(args.arg(i + 4)).asV3f();
+        Vector3f rot = args.arg(i + 5).isnil() ? null : LuaVector.checkOrNew(args.arg(i + 5)).asV3f();
+        Vector3f scale = args.arg(i + 6).isnil() ? null : LuaVector.checkOrNew(args.arg(i + 6)).asV3f();
+
+        return new ItemRenderTask(stack, mode, emissive, pos, rot, scale);
+    }
+
+    private static BlockRenderTask checkBlockTask(Varargs args, int i) {
+        BlockState state = BlockStateAPI.checkOrCreateBlockState(args.arg(i));
+        boolean emissive = !args.arg(i + 2).isnil() && args.arg(i + 2).checkboolean();
+        Vector3f pos = args.arg(i + 3).isnil() ? null : LuaVector.checkOrNew(args.arg(i + 3)).asV3f();
+        Vector3f rot = args.arg(i + 4).isnil() ? null : LuaVector.checkOrNew(args.arg(i + 4)).asV3f();
+        Vector3f scale = args.arg(i + 5).isnil() ? null : LuaVector.checkOrNew(args.arg(i + 5)).asV3f();
+
+        return new BlockRenderTask(state, emissive, pos, rot, scale);
+    }
+
+    private static TextRenderTask checkTextTask(Varargs args, int i) {
+        String arg1 = TextUtils.noBadges4U(args.arg(i).checkjstring()).replaceAll("[\n\r]", " ");
+
+        if (arg1.length() > 65535)
+            throw new LuaError("Text too long - oopsie!");
+
+        Text text;
+        try {
+            text = Text.Serializer.fromJson(new StringReader(arg1));
+
+            if (text == null)
+                throw new Exception("Error parsing JSON string");
+        } catch (Exception ignored) {
+            text = new LiteralText(arg1);
+        }
+
+        boolean emissive = !args.arg(i + 2).isnil() && args.arg(i + 2).checkboolean();
+        Vector3f pos = args.arg(i + 3).isnil() ? null : LuaVector.checkOrNew(args.arg(i + 3)).asV3f();
+        Vector3f rot = args.arg(i + 4).isnil() ? null : LuaVector.checkOrNew(args.arg(i + 4)).asV3f();
+        Vector3f scale = args.arg(i + 5).isnil() ? null : LuaVector.checkOrNew(args.arg(i + 5)).asV3f();
+
+        return new TextRenderTask(text, emissive, pos, rot, scale);
+    }
 }
@@ -243,7 +243,7 @@ public class WorldAPI {
                         if (data == null || data.script == null || !data.script.allowPlayerTargeting)
                             continue;
 
-                        playerList.insert(0, new PlayerEntityAPI.PlayerEntityLuaAPITable(() -> entity).getTable());
+                        playerList.insert(0, PlayerEntityAPI.get(entity));
                     }
 
                     return playerList;
@@ -73,7 +73,7 @@ public class ArmorFeatureRendererMixin<T extends LivingEntity, M extends BipedEn
     public void figura$applyPartCustomization(String id, ModelPart part) {
         PlayerData data = FiguraMod.currentData;
 
-        if (data != null && data.script != null && data.script.allCustomizations != null) {
+        if (data != null && data.script != null && data.script.allCustomizations != null && !data.isVanillaFallback()) {
             VanillaModelPartCustomization customization = data.script.allCustomizations.get(id);
 
             if (customization != null) {
@@ -3,6 +3,9 @@ package net.blancworks.figura.mixin;
 import net.blancworks.figura.FiguraMod;
 import net.blancworks.figura.PlayerDataManager;
 import net.blancworks.figura.lua.CustomScript;
+import net.blancworks.figura.lua.ScriptScheduler;
+import net.blancworks.figura.models.AvatarRenderBudget;
+import net.blancworks.figura.network.NetworkSendQueue;
 import net.minecraft.client.gui.hud.DebugHud;
 import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.injection.At;
@@ -34,9 +37,21 @@ public class DebugHudMixin {
                 lines.add(++i, String.format("Tick instructions: %d", script.tickInstructionCount + script.damageInstructionCount));
                 lines.add(++i, String.format("Render instructions: %d",script.renderInstructionCount + script.worldRenderInstructionCount + script.renderLayerInstructionCount));
                 lines.add(++i, String.format("Pings Sent: %d, Received: %d", script.pingSent, script.pingReceived));
+                lines.add(++i, String.format("Script CPU time (µs): Init %d, Tick %d, Ping %d, Render %d", script.initTime.cpuTime, script.tickTime.cpuTime + script.damageTime.cpuTime, script.pingTime.cpuTime, script.renderTime.cpuTime + script.worldRenderTime.cpuTime));
+                lines.add(++i, String.format("Script wall time (µs): Init %d, Tick %d, Ping %d, Render %d", script.initTime.wallTime, script.tickTime.wallTime + script.damageTime.wallTime, script.pingTime.wallTime, script.renderTime.wallTime + script.worldRenderTime.wallTime));
+                lines.add(++i, String.format("Pending events: %d", script.getPendingTaskCount()));
             }
         }
 
+        lines.add(++i, String.format("Avatar render: %d/%s vertices, %d/%s µs (%d reduced, %d vanilla)", AvatarRenderBudget.getLastVertices(), formatBudget(AvatarRenderBudget.getVertexBudget()), AvatarRenderBudget.getLastTime() / 1000, formatBudget(AvatarRenderBudget.getTimeBudget() / 1000), AvatarRenderBudget.getLastReducedCount(), AvatarRenderBudget.getLastFallbackCount()));
+        lines.add(++i, String.format("Script workers: %d/%d busy, %d scripts waiting", ScriptScheduler.getBusyWorkerCount(), ScriptScheduler.getWorkerCount(), ScriptScheduler.getWaitingScriptCount()));
+        lines.add(++i, String.format("Network queued: Control %d, Ping %d, Bulk %d", NetworkSendQueue.Lane.CONTROL.getQueuedCount(), NetworkSendQueue.Lane.PING.getQueuedCount(), NetworkSendQueue.Lane.BULK.getQueuedCount()));
+        lines.add(++i, String.format("Network send latency (µs): Control %d, Ping %d (avg %d, %d dropped), Bulk %d", NetworkSendQueue.Lane.CONTROL.getLastLatency(), NetworkSendQueue.Lane.PING.getLastLatency(), NetworkSendQueue.Lane.PING.getAverageLatency(), NetworkSendQueue.Lane.PING.getDroppedCount(), NetworkSendQueue.Lane.BULK.getLastLatency()));
+
         lines.add(++i, "");
     }
+
+    private static String formatBudget(long budget) {
+        return budget >= Integer.MAX_VALUE ? "∞" : String.valueOf(budget);
+    }
 }
\ No newline at end of file
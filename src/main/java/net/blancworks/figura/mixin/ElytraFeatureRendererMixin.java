@@ -59,7 +59,7 @@ public class ElytraFeatureRendererMixin<T extends LivingEntity, M extends Entity
     public void figura$applyPartCustomization(String id, ModelPart part) {
         PlayerData data = FiguraMod.currentData;
 
-        if (data != null && data.script != null && data.script.allCustomizations != null) {
+        if (data != null && data.script != null && data.script.allCustomizations != null && !data.isVanillaFallback()) {
             VanillaModelPartCustomization customization = data.script.allCustomizations.get(id);
 
             if (customization != null) {
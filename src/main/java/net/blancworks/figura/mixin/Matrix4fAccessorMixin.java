@@ -0,0 +1,22 @@
+package net.blancworks.figura.mixin;
+
+import net.minecraft.util.math.Matrix4f;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.gen.Accessor;
+
+@Mixin(Matrix4f.class)
+public interface Matrix4fAccessorMixin {
+
+    @Accessor("a00") float getA00();
+    @Accessor("a01") float getA01();
+    @Accessor("a02") float getA02();
+    @Accessor("a03") float getA03();
+    @Accessor("a10") float getA10();
+    @Accessor("a11") float getA11();
+    @Accessor("a12") float getA12();
+    @Accessor("a13") float getA13();
+    @Accessor("a20") float getA20();
+    @Accessor("a21") float getA21();
+    @Accessor("a22") float getA22();
+    @Accessor("a23") float getA23();
+}
@@ -11,7 +11,7 @@ import net.blancworks.figura.lua.api.model.VanillaModelPartCustomization;
 import net.blancworks.figura.lua.api.nameplate.NamePlateAPI;
 import net.blancworks.figura.lua.api.nameplate.NamePlateCustomization;
 import net.blancworks.figura.trust.TrustContainer;
-import net.blancworks.figura.utils.TextUtils;
+import net.blancworks.figura.utils.TextMeshCache;
 import net.minecraft.client.MinecraftClient;
 import net.minecraft.client.font.TextRenderer;
 import net.minecraft.client.model.ModelPart;
@@ -64,7 +64,10 @@ public abstract class PlayerEntityRendererMixin extends LivingEntityRenderer<Abs
         //Reset this here because... Execution order.
 
         PlayerData data = FiguraMod.currentData;
-        if (data != null && data.script != null && data.getTrustContainer().getTrust(TrustContainer.Trust.VANILLA_MODEL_EDIT) == 1) {
+        if (data != null && data.model != null)
+            data.model.startEntityRender();
+
+        if (data != null && data.script != null && !data.isVanillaFallback() && data.getTrustContainer().getTrust(TrustContainer.Trust.VANILLA_MODEL_EDIT) == 1) {
             figura$applyPartCustomization(VanillaModelAPI.VANILLA_HEAD, this.getModel().head);
             figura$applyPartCustomization(VanillaModelAPI.VANILLA_TORSO, this.getModel().torso);
             figura$applyPartCustomization(VanillaModelAPI.VANILLA_LEFT_ARM, this.getModel().leftArm);
@@ -98,6 +101,9 @@ public abstract class PlayerEntityRendererMixin extends LivingEntityRenderer<Abs
             }
         }
 
+        if (FiguraMod.currentData != null && FiguraMod.currentData.model != null)
+            FiguraMod.currentData.model.endEntityRender();
+
         FiguraMod.clearRenderingData();
         figura$clearAllPartCustomizations();
     }
@@ -221,7 +227,7 @@ public abstract class PlayerEntityRendererMixin extends LivingEntityRenderer<Abs
         if (!(distance > 4096.0D)) {
             boolean sneaky = !entity.isSneaky();
             int i = 0;
-            List<Text> textList = TextUtils.splitText(text, "\n");
+            List<Text> textList = TextMeshCache.splitLines(text);
             for (Text splitText : textList) {
                 renderNameplate(matrices, vertexConsumers, sneaky, light, splitText, i - textList.size() + 1);
                 i++;
@@ -244,12 +250,12 @@ public abstract class PlayerEntityRendererMixin extends LivingEntityRenderer<Abs
         int backgroundColor = (int) (MinecraftClient.getInstance().options.getTextBackgroundOpacity(0.25F) * 255.0F) << 24;
 
         TextRenderer textRenderer = Objects.requireNonNull(this.getFontRenderer());
-        float textWidth = (float) (-textRenderer.getWidth(text) / 2);
+        float textWidth = (float) (-TextMeshCache.getWidth(textRenderer, text) / 2);
 
         //render
-        textRenderer.draw(text, textWidth, 10.5f * line, 553648127, false, matrix4f, vertexConsumers, sneaky, backgroundColor, light);
+        TextMeshCache.draw(textRenderer, text, textWidth, 10.5f * line, 553648127, false, matrix4f, vertexConsumers, sneaky, backgroundColor, light);
         if (sneaky)
-            textRenderer.draw(text, textWidth, 10.5f * line, -1, false, matrix4f, vertexConsumers, false, 0, light);
+            TextMeshCache.draw(textRenderer, text, textWidth, 10.5f * line, -1, false, matrix4f, vertexConsumers, false, 0, light);
 
     }
 
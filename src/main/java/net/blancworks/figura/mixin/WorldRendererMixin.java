@@ -3,6 +3,8 @@ package net.blancworks.figura.mixin;
 import net.blancworks.figura.FiguraMod;
 import net.blancworks.figura.PlayerData;
 import net.blancworks.figura.PlayerDataManager;
+import net.blancworks.figura.lua.ScriptRenderPolicy;
+import net.blancworks.figura.models.AvatarRenderBudget;
 import net.minecraft.client.network.AbstractClientPlayerEntity;
 import net.minecraft.client.render.*;
 import net.minecraft.client.render.entity.EntityRenderDispatcher;
@@ -28,9 +30,12 @@ public class WorldRendererMixin {
     private void render(MatrixStack matrices, float tickDelta, long limitTime, boolean renderBlockOutline, Camera camera, GameRenderer gameRenderer, LightmapTextureManager lightmapTextureManager, Matrix4f matrix4f, CallbackInfo ci) {
         if (this.world == null) return;
 
+        ScriptRenderPolicy.startFrame();
+        AvatarRenderBudget.startFrame(this.world.getPlayers());
+
         this.world.getPlayers().forEach((player) -> {
             PlayerData data = PlayerDataManager.getDataForPlayer(player.getUuid());
-            if (data != null && data.script != null) {
+            if (data != null && data.script != null && ScriptRenderPolicy.shouldRunWorldRender(data)) {
                 data.script.onWorldRender(tickDelta);
             }
         });
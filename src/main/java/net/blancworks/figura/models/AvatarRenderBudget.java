@@ -0,0 +1,203 @@
+package net.blancworks.figura.models;
+
+import net.blancworks.figura.PlayerData;
+import net.blancworks.figura.PlayerDataManager;
+import net.blancworks.figura.config.ConfigManager.Config;
+import net.blancworks.figura.lua.ScriptRenderPolicy;
+import net.blancworks.figura.trust.PlayerTrustManager;
+import net.blancworks.figura.trust.TrustContainer;
+import net.minecraft.entity.player.PlayerEntity;
+import net.minecraft.util.Identifier;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+//Shares a vertex and time budget between all the avatars rendered in a frame, on top of each avatar's own complexity trust.
+//At the start of every frame the avatars are sorted by distance (closer and more trusted first) and given a share of the
+//vertex budget, based on what they drew last frame. Avatars that don't fit lose detail step by step:
+//shaders first, then extra textures, then small parts (see ModelLOD), then they're cut off at what's left.
+//Once nothing's left, they're shown with the vanilla model.
+//The time budget scales the vertex budget down while rendering avatars takes too long, and in a frame that is way over it,
+//the remaining avatars are shown with the vanilla model right away.
+public final class AvatarRenderBudget {
+    private static final Comparator<PlayerData> PRIORITY = Comparator.comparingDouble(data -> data.budgetPriority);
+
+    //scales the vertex budget, lowered while avatars go over the time budget
+    private static float scale = 1f;
+
+    private static int vertexBudget = Integer.MAX_VALUE;
+    private static long timeBudget = Long.MAX_VALUE;
+
+    private static int vertices = 0;
+    private static long time = 0;
+
+    //last finished frame, for the debug hud
+    private static int lastVertices = 0;
+    private static long lastTime = 0;
+    private static int lastReduced = 0;
+    private static int lastFallbacks = 0;
+    private static int reduced = 0;
+    private static int fallbacks = 0;
+
+    private static final ArrayList<PlayerData> avatars = new ArrayList<>();
+
+    //Called once at the start of every frame, after ScriptRenderPolicy, with every player in the world.
+    public static void startFrame(List<? extends PlayerEntity> players) {
+        lastVertices = vertices;
+        lastTime = time;
+        lastReduced = reduced;
+        lastFallbacks = fallbacks;
+        vertices = 0;
+        time = 0;
+        reduced = 0;
+        fallbacks = 0;
+
+        int maxVertices = Math.max((int) Config.AVATAR_VERTEX_BUDGET.value, 0);
+        int maxTime = Math.max((int) Config.AVATAR_RENDER_TIME.value, 0);
+
+        timeBudget = maxTime > 0 ? maxTime * 1_000_000L : Long.MAX_VALUE;
+        if (lastTime > timeBudget)
+            scale = Math.max(scale * 0.8f, 0.1f);
+        else if (lastTime < timeBudget / 4 * 3)
+            scale = Math.min(scale * 1.05f, 1f);
+
+        vertexBudget = maxVertices > 0 ? (int) (maxVertices * scale) : Integer.MAX_VALUE;
+
+        avatars.clear();
+        for (PlayerEntity player : players) {
+            //only players whose avatar was requested have data, the budget never creates it
+            PlayerData data = PlayerDataManager.getLoadedData(player.getUuid());
+            if (data != null && data.model != null && data.lastEntity != null) {
+                data.budgetPriority = getPriority(data);
+                avatars.add(data);
+            }
+        }
+
+        avatars.sort(PRIORITY);
+
+        int left = vertexBudget;
+        for (PlayerData data : avatars) {
+            left -= allocate(data.model, left);
+        }
+
+        //don't keep player data alive until the next frame
+        avatars.clear();
+    }
+
+    //Picks the most detailed level that fits in what's left of the budget, returns the vertices it takes.
+    private static int allocate(CustomModel model, int left) {
+        model.budgetFrame = ScriptRenderPolicy.getFrame();
+
+        int cap = model.getMaxRenderAmount();
+        int full = Math.min(cap, model.baseDemand + model.extraTextureDemand + model.shaderDemand);
+        int noShaders = Math.min(cap, model.baseDemand + model.extraTextureDemand);
+        int base = Math.min(cap, model.baseDemand);
+
+        if (full <= left) {
+            model.budgetLOD = ModelLOD.FULL;
+            model.vertexBudget = full;
+        } else if (noShaders <= left) {
+            model.budgetLOD = ModelLOD.REDUCED;
+            model.vertexBudget = noShaders;
+        } else if (left > 0) {
+            model.budgetLOD = ModelLOD.LOW;
+            model.vertexBudget = Math.min(base, left);
+        } else {
+            model.budgetLOD = ModelLOD.VANILLA;
+            model.vertexBudget = 0;
+        }
+
+        //models that weren't rendered yet don't know what they need, they get their whole cap for one frame
+        if (full == 0) {
+            model.vertexBudget = cap;
+            return 0;
+        }
+
+        return model.vertexBudget;
+    }
+
+    //Closer avatars come first, avatars in more trusted groups count as closer, and avatars that weren't on screen last.
+    private static double getPriority(PlayerData data) {
+        if (data == PlayerDataManager.localPlayer)
+            return -1;
+
+        double distance = ModelLOD.getDistance(data.lastEntity) / (getGroupIndex(data) + 1);
+
+        if (data.model.lastRenderFrame < ScriptRenderPolicy.getFrame() - 1)
+            distance += 100_000;
+
+        return distance;
+    }
+
+    private static int getGroupIndex(PlayerData data) {
+        TrustContainer container = data.getTrustContainer();
+        if (container == null)
+            return 0;
+
+        int i = 0;
+        for (Identifier id : PlayerTrustManager.groups.keySet()) {
+            if (id.equals(container.parentID))
+                return i;
+            i++;
+        }
+
+        return 0;
+    }
+
+    //Level of detail the budget allows for this model, this frame.
+    public static ModelLOD getLOD(CustomModel model) {
+        if (model.budgetFrame != ScriptRenderPolicy.getFrame())
+            return ModelLOD.FULL;
+
+        //way over the time budget, fall back to vanilla for everyone but the local player
+        if (time / 2 > timeBudget && model.owner != PlayerDataManager.localPlayer)
+            return ModelLOD.VANILLA;
+
+        return model.budgetLOD;
+    }
+
+    //Vertices this model can draw this frame.
+    public static int getVertexBudget(CustomModel model) {
+        return model.budgetFrame == ScriptRenderPolicy.getFrame() ? model.vertexBudget : Integer.MAX_VALUE;
+    }
+
+    //Adds what a model rendered to this frame.
+    public static void record(ModelLOD lod, int renderedVertices, long nanos) {
+        vertices += renderedVertices;
+        time += nanos;
+
+        if (lod == ModelLOD.VANILLA)
+            fallbacks++;
+        else if (lod != ModelLOD.FULL)
+            reduced++;
+    }
+
+    public static int getLastVertices() {
+        return lastVertices;
+    }
+
+    public static long getLastTime() {
+        return lastTime;
+    }
+
+    public static int getVertexBudget() {
+        return vertexBudget;
+    }
+
+    public static long getTimeBudget() {
+        return timeBudget;
+    }
+
+    public static int getLastReducedCount() {
+        return lastReduced;
+    }
+
+    public static int getLastFallbackCount() {
+        return lastFallbacks;
+    }
+
+    public static float getScale() {
+        return scale;
+    }
+}
@@ -4,9 +4,9 @@ import net.blancworks.figura.FiguraMod;
 import net.blancworks.figura.PlayerData;
 import net.blancworks.figura.assets.FiguraAsset;
 import net.blancworks.figura.config.ConfigManager.Config;
+import net.blancworks.figura.lua.ScriptRenderPolicy;
 import net.blancworks.figura.lua.api.model.VanillaModelAPI;
 import net.blancworks.figura.lua.api.model.VanillaModelPartCustomization;
-import net.blancworks.figura.trust.PlayerTrustManager;
 import net.blancworks.figura.trust.TrustContainer;
 import net.fabricmc.fabric.api.util.NbtType;
 import net.minecraft.client.MinecraftClient;
@@ -36,9 +36,32 @@ public class CustomModel extends FiguraAsset {
 
     public Vec2f defaultTextureSize;
 
+    //Single pass renderer shared by all the parts of this model
+    public final CustomModelPartRenderer partRenderer = new CustomModelPartRenderer();
+
     public int leftToRender = 0;
     public int lastComplexity = 0;
 
+    //level of detail picked for the current frame, only lowered while rendering in the world
+    public ModelLOD lod = ModelLOD.FULL;
+    //level picked for the entity render in progress, before the vanilla model is drawn, null outside of it
+    private ModelLOD entityLOD = null;
+    //size, in blocks, of a single pixel at the distance the model is rendered from
+    public float minPartSize = 0f;
+    //last frame the model was rendered in the world, see ScriptRenderPolicy
+    public long lastRenderFrame = -1;
+
+    //share of the frame budget given to this model, see AvatarRenderBudget
+    public long budgetFrame = -1;
+    public ModelLOD budgetLOD = ModelLOD.FULL;
+    public int vertexBudget = 0;
+
+    //vertices each layer needs at full detail, measured during the last render
+    public int baseDemand = 0;
+    public int extraTextureDemand = 0;
+    public int shaderDemand = 0;
+    public boolean measuringDemand = false;
+
     //used during rendering
     public boolean applyHiddenTransforms = true;
     public CustomModelPart.ParentType renderOnly = null;
@@ -90,18 +113,40 @@ public class CustomModel extends FiguraAsset {
         if (this.owner == null)
             return 0;
 
-        TrustContainer tc = PlayerTrustManager.getContainer(new Identifier("player", this.owner.playerId.toString()));
+        TrustContainer tc = this.owner.getTrustContainer();
         return tc != null ? tc.getTrust(TrustContainer.Trust.COMPLEXITY) : 0;
     }
 
     public void render(EntityModel<?> entity_model, MatrixStack matrices, MatrixStack transformStack, VertexConsumerProvider vcp, int light, int overlay, float alpha) {
         if (owner == null) return;
 
-        leftToRender = getMaxRenderAmount();
+        long startTime = System.nanoTime();
+
+        leftToRender = Math.min(getMaxRenderAmount(), AvatarRenderBudget.getVertexBudget(this));
         int maxRender = leftToRender;
 
-        if (owner.script != null)
+        lastRenderFrame = ScriptRenderPolicy.getFrame();
+
+        //distant avatars don't run their render event every frame, their parts keep the last transforms in between
+        if (owner.script != null && ScriptRenderPolicy.shouldRunRender(owner)) {
             owner.script.render(FiguraMod.deltaTime);
+            ScriptRenderPolicy.recordTime(System.nanoTime() - startTime);
+        }
+
+        //too far away, or out of budget, keep the vanilla model instead
+        lod = entityLOD != null ? entityLOD : pickLOD();
+        if (lod == ModelLOD.VANILLA) {
+            AvatarRenderBudget.record(lod, 0, System.nanoTime() - startTime);
+            lod = ModelLOD.FULL;
+            return;
+        }
+
+        baseDemand = 0;
+        extraTextureDemand = 0;
+        shaderDemand = 0;
+        measuringDemand = true;
+
+        minPartSize = lod.skipSmallParts && owner.lastEntity != null ? 1f / ModelLOD.getPixelsPerBlock(ModelLOD.getDistance(owner.lastEntity)) : 0f;
 
         synchronized (this.allParts) {
             for (CustomModelPart part : this.allParts) {
@@ -136,6 +181,33 @@ public class CustomModel extends FiguraAsset {
                 matrices.pop();
             }
         }
+
+        measuringDemand = false;
+        AvatarRenderBudget.record(lod, MathHelper.clamp(maxRender - leftToRender, 0, maxRender), System.nanoTime() - startTime);
+
+        lod = ModelLOD.FULL;
+        minPartSize = 0f;
+    }
+
+    private ModelLOD pickLOD() {
+        return ModelLOD.lowest(ModelLOD.forEntity(owner != null ? owner.lastEntity : null), AvatarRenderBudget.getLOD(this));
+    }
+
+    //Called when the entity starts rendering, before the vanilla model is drawn.
+    //The level is kept until endEntityRender, so the vanilla parts can be left alone when falling back to them.
+    public ModelLOD startEntityRender() {
+        entityLOD = pickLOD();
+        return entityLOD;
+    }
+
+    public void endEntityRender() {
+        entityLOD = null;
+    }
+
+    //True while the entity is rendered with the vanilla model instead of this one,
+    //vanilla part customizations aren't applied then, as the avatar usually hides the parts it replaces.
+    public boolean isVanillaFallback() {
+        return entityLOD == ModelLOD.VANILLA;
     }
 
     public void renderArm(PlayerData playerData, MatrixStack matrices, VertexConsumerProvider vertexConsumers, int light, ModelPart arm, PlayerEntityModel<?> model, float alpha) {
@@ -5,8 +5,9 @@ import it.unimi.dsi.fastutil.floats.FloatArrayList;
 import it.unimi.dsi.fastutil.floats.FloatList;
 import net.blancworks.figura.FiguraMod;
 import net.blancworks.figura.PlayerData;
-import net.blancworks.figura.config.ConfigManager.Config;
 import net.blancworks.figura.lua.api.model.*;
+import net.blancworks.figura.mixin.Matrix3fAccessorMixin;
+import net.blancworks.figura.mixin.Matrix4fAccessorMixin;
 import net.blancworks.figura.models.tasks.RenderTask;
 import net.blancworks.figura.utils.MathUtils;
 import net.fabricmc.fabric.api.util.NbtType;
@@ -23,7 +24,6 @@ import net.minecraft.util.math.*;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
-import java.util.function.Function;
 import java.util.function.Supplier;
 
 public class CustomModelPart {
@@ -52,7 +52,7 @@ public class CustomModelPart {
     public ArrayList<CustomModelPart> children = new ArrayList<>();
 
     public ShaderType shaderType = ShaderType.None;
-    private static final Map<Integer, Vector3f> END_SHADER_COLORS = new HashMap<Integer, Vector3f>(){{
+    static final Map<Integer, Vector3f> END_SHADER_COLORS = new HashMap<Integer, Vector3f>(){{
         final Random RANDOM = new Random(31100L);
         //first layer
         float r = (RANDOM.nextFloat() * 0.5F + 0.1F) * 0.15F;
@@ -81,6 +81,9 @@ public class CustomModelPart {
     public FloatList vertexData = new FloatArrayList();
     public int vertexCount = 0;
 
+    //Biggest extent of the vertices on any axis, measured on rebuild, used to skip parts too small to see
+    public float boundingSize = 0f;
+
     public Matrix4f lastModelMatrix = new Matrix4f();
     public Matrix3f lastNormalMatrix = new Matrix3f();
 
@@ -89,6 +92,8 @@ public class CustomModelPart {
 
     //Extra special rendering for this part
     public final ArrayList<RenderTask> renderTasks = new ArrayList<>();
+    //Render tasks kept across frames, managed by id by the script, see CustomScript.setRenderTask
+    public final ArrayList<RenderTask> retainedRenderTasks = new ArrayList<>();
 
     public static boolean canRenderHitBox = false;
 
@@ -99,209 +104,9 @@ public class CustomModelPart {
             return 0;
 
         //lets render boys!!
-        boolean applyHiddenTransforms = data.model.applyHiddenTransforms;
-        ParentType renderOnly = data.model.renderOnly;
-        int ret = data.model.leftToRender;
-        data.model.renderOnly = null;
-
-        //main texture
-        Function<Identifier, RenderLayer> layerFunction = RenderLayer::getEntityTranslucent;
-        ret = renderTextures(ret, matrices, transformStack, vcp, light, overlay, 0, 0, new Vector3f(1f, 1f, 1f), alpha, false, getTexture(), layerFunction, false, applyHiddenTransforms, renderOnly);
-
-        //extra textures
-        for (FiguraTexture figuraTexture : FiguraMod.currentData.extraTextures) {
-            Function<Identifier, RenderLayer> renderLayerGetter = FiguraTexture.EXTRA_TEXTURE_TO_RENDER_LAYER.get(figuraTexture.type);
-
-            if (renderLayerGetter != null) {
-                renderTextures(ret, matrices, transformStack, vcp, light, overlay, 0, 0, new Vector3f(1f, 1f, 1f), alpha, false, figuraTexture.id, renderLayerGetter, true, applyHiddenTransforms, renderOnly);
-            }
-        }
-
-        boolean batchingFix = (boolean) Config.ENTITY_BATCHING_FIX.value;
-        int prevRet = ret;
-
-        if (batchingFix)
-            draw(vcp);
-
-        //shaders
-        ret = renderShaders(ret, matrices, vcp, light, overlay, 0, 0, new Vector3f(1f, 1f, 1f), alpha, false, (byte) 0, applyHiddenTransforms, renderOnly);
-        if (batchingFix && prevRet != ret) {
-            prevRet = ret;
-            draw(vcp);
-        }
-
-        //extra stuff and hitboxes
-        ret = renderExtraParts(ret, matrices, vcp, light, false, applyHiddenTransforms, renderOnly);
-        if (batchingFix && prevRet != ret)
-            draw(vcp);
-
-        return ret;
-    }
-
-    //Renders this custom model part and all its children.
-    //Returns the cuboids left to render after this one, and only renders until leftToRender is zero.
-    public int renderTextures(int leftToRender, MatrixStack matrices, MatrixStack transformStack, VertexConsumerProvider vcp, int light, int overlay, float u, float v, Vector3f prevColor, float alpha, boolean canRender, Identifier texture, Function<Identifier, RenderLayer> layerFunction, boolean isExtraTex, boolean applyHiddenTransforms, ParentType renderOnly) {
-        //do not render invisible parts
-        if (!this.visible || (isExtraTex && !this.extraTex))
-            return leftToRender;
-
-        matrices.push();
-        transformStack.push();
-
-        if (applyHiddenTransforms) {
-            applyVanillaTransforms(matrices, transformStack);
-
-            applyTransforms(matrices);
-            applyTransforms(transformStack);
-
-            updateModelMatrices(transformStack);
-        } else if (canRender) {
-            applyTransforms(matrices);
-            applyTransforms(transformStack);
-        }
-
-        if (renderOnly == null || this.parentType == renderOnly)
-            canRender = true;
-
-        //uv -> color -> alpha -> cull
-        u += this.uvOffset.x;
-        v += this.uvOffset.y;
-
-        Vector3f color = this.color.copy();
-        color.multiplyComponentwise(prevColor.getX(), prevColor.getY(), prevColor.getZ());
-
-        alpha = this.alpha * alpha;
-
-        if (!isExtraTex && this.cull)
-            layerFunction = RenderLayer::getEntityTranslucentCull;
-
-        //texture
-        if (this.textureType != TextureType.Custom)
-            texture = getTexture();
-
-        //render!
-        if (canRender) {
-            //get vertex consumer
-            VertexConsumer consumer = vcp.getBuffer(layerFunction.apply(texture));
-
-            //render
-            leftToRender = renderCube(leftToRender, matrices, consumer, light, overlay, u, v, color, alpha);
-        }
-
-        for (CustomModelPart child : this.children) {
-            if (leftToRender <= 0)
-                break;
-
-            //Don't render special parts.
-            if (child.isSpecial())
-                continue;
-
-            //render part
-            leftToRender = child.renderTextures(leftToRender, matrices, transformStack, vcp, light, overlay, u, v, color, alpha, canRender, texture, layerFunction, isExtraTex, applyHiddenTransforms, renderOnly);
-        }
-
-        matrices.pop();
-        transformStack.pop();
-
-        return leftToRender;
-    }
-
-    public int renderShaders(int leftToRender, MatrixStack matrices, VertexConsumerProvider vcp, int light, int overlay, float u, float v, Vector3f prevColor, float alpha, boolean canRender, byte shadersToRender, boolean applyHiddenTransforms, ParentType renderOnly) {
-        //do not render invisible parts
-        if (!this.visible)
-            return leftToRender;
-
-        matrices.push();
-
-        if (applyHiddenTransforms) {
-            applyVanillaTransforms(matrices, new MatrixStack());
-            applyTransforms(matrices);
-        } else if (canRender) {
-            applyTransforms(matrices);
-        }
-
-        if (renderOnly == null || this.parentType == renderOnly)
-            canRender = true;
-
-        //uv -> color -> alpha -> shaders
-        u += this.uvOffset.x;
-        v += this.uvOffset.y;
-
-        Vector3f color = this.color.copy();
-        color.multiplyComponentwise(prevColor.getX(), prevColor.getY(), prevColor.getZ());
-
-        alpha = this.alpha * alpha;
-
-        byte shaders = shadersToRender;
-        if (this.shaderType != ShaderType.None)
-            shaders = (byte) (shaders | this.shaderType.id);
-
-        //render!
-        if (canRender) {
-            if (ShaderType.EndPortal.isShader(shaders)) {
-                for (int i = 0; i < 18; i++) {
-                    Vector3f rgb = END_SHADER_COLORS.get(i);
-                    if (rgb == null) continue;
-                    leftToRender = renderCube(leftToRender, matrices, vcp.getBuffer(RenderLayer.getEndPortal(i)), light, overlay, u, v, rgb, alpha);
-                }
-            }
-            if (ShaderType.Glint.isShader(shaders))
-                leftToRender = renderCube(leftToRender, matrices, vcp.getBuffer(RenderLayer.getDirectEntityGlint()), light, overlay, u, v, color, alpha);
-        }
-
-        for (CustomModelPart child : this.children) {
-            if (leftToRender <= 0)
-                break;
-
-            //Don't render special parts.
-            if (child.isSpecial())
-                continue;
-
-            //render part
-            leftToRender = child.renderShaders(leftToRender, matrices, vcp, light, overlay, u, v, color, alpha, canRender, shaders, applyHiddenTransforms, renderOnly);
-        }
-
-        matrices.pop();
-
-        return leftToRender;
-    }
-
-    public int renderExtraParts(int leftToRender, MatrixStack matrices, VertexConsumerProvider vcp, int light, boolean canRender, boolean applyHiddenTransforms, ParentType renderOnly) {
-        //do not render invisible parts
-        if (!this.visible)
-            return leftToRender;
-
-        matrices.push();
-
-        if (applyHiddenTransforms) {
-            applyVanillaTransforms(matrices, new MatrixStack());
-            applyTransforms(matrices);
-        } else if (canRender) {
-            applyTransforms(matrices);
-        }
-
-        if (renderOnly == null || this.parentType == renderOnly)
-            canRender = true;
-
-        //render!
-        if (canRender)
-            leftToRender = renderExtras(leftToRender, matrices, vcp, light);
-
-        for (CustomModelPart child : this.children) {
-            if (leftToRender <= 0)
-                break;
-
-            //Don't render special parts.
-            if (child.isSpecial())
-                continue;
-
-            //render part
-            leftToRender = child.renderExtraParts(leftToRender, matrices, vcp, light, canRender, applyHiddenTransforms, renderOnly);
-        }
-
-        matrices.pop();
-
-        return leftToRender;
+        //a render task can end up rendering this same model again, so never share the renderer in that case
+        CustomModelPartRenderer renderer = data.model.partRenderer.isRendering() ? new CustomModelPartRenderer() : data.model.partRenderer;
+        return renderer.render(this, data, matrices, transformStack, vcp, light, overlay, alpha);
     }
 
     public void draw(VertexConsumerProvider vcp) {
@@ -340,39 +145,49 @@ public class CustomModelPart {
     }
 
     public int renderCube(int leftToRender, MatrixStack matrices, VertexConsumer vertices, int light, int overlay, float u, float v, Vector3f color, float alpha) {
-        Matrix4f modelMatrix = matrices.peek().getModel();
-        Matrix3f normalMatrix = matrices.peek().getNormal();
+        return renderCube(leftToRender, matrices.peek(), vertices, light, overlay, u, v, color.getX(), color.getY(), color.getZ(), alpha);
+    }
 
-        for (int i = 1; i <= this.vertexCount; i++) {
-            int startIndex = (i - 1) * 8;
+    public int renderCube(int leftToRender, MatrixStack.Entry matrix, VertexConsumer vertices, int light, int overlay, float u, float v, float r, float g, float b, float alpha) {
+        return renderCube(leftToRender, (Matrix4fAccessorMixin) (Object) matrix.getModel(), (Matrix3fAccessorMixin) (Object) matrix.getNormal(), vertices, light, overlay, u, v, r, g, b, alpha);
+    }
 
-            //Get vertex.
-            Vector4f fullVert = new Vector4f(
-                    this.vertexData.getFloat(startIndex++),
-                    this.vertexData.getFloat(startIndex++),
-                    this.vertexData.getFloat(startIndex++),
-                    1
-            );
+    public int renderCube(int leftToRender, Matrix4fAccessorMixin model, Matrix3fAccessorMixin normal, VertexConsumer vertices, int light, int overlay, float u, float v, float r, float g, float b, float alpha) {
+        //read the matrices once, so the vertex loop below only works on primitives and allocates nothing
+        float m00 = model.getA00(), m01 = model.getA01(), m02 = model.getA02(), m03 = model.getA03();
+        float m10 = model.getA10(), m11 = model.getA11(), m12 = model.getA12(), m13 = model.getA13();
+        float m20 = model.getA20(), m21 = model.getA21(), m22 = model.getA22(), m23 = model.getA23();
 
-            float vertU = this.vertexData.getFloat(startIndex++);
-            float vertV = this.vertexData.getFloat(startIndex++);
+        float n00 = normal.getA00(), n01 = normal.getA01(), n02 = normal.getA02();
+        float n10 = normal.getA10(), n11 = normal.getA11(), n12 = normal.getA12();
+        float n20 = normal.getA20(), n21 = normal.getA21(), n22 = normal.getA22();
 
-            Vector3f normal = new Vector3f(
-                    this.vertexData.getFloat(startIndex++),
-                    this.vertexData.getFloat(startIndex++),
-                    this.vertexData.getFloat(startIndex)
-            );
+        float[] data = getVertexArray();
 
-            fullVert.transform(modelMatrix);
-            normal.transform(normalMatrix);
+        for (int i = 1; i <= this.vertexCount; i++) {
+            int index = (i - 1) * 8;
+
+            //Get vertex.
+            float x = data[index];
+            float y = data[index + 1];
+            float z = data[index + 2];
+            float vertU = data[index + 3];
+            float vertV = data[index + 4];
+            float nx = data[index + 5];
+            float ny = data[index + 6];
+            float nz = data[index + 7];
 
             //Push vertex.
             vertices.vertex(
-                    fullVert.getX(), fullVert.getY(), fullVert.getZ(),
-                    color.getX(), color.getY(), color.getZ(), alpha,
+                    m00 * x + m01 * y + m02 * z + m03,
+                    m10 * x + m11 * y + m12 * z + m13,
+                    m20 * x + m21 * y + m22 * z + m23,
+                    r, g, b, alpha,
                     vertU + u, vertV + v,
                     overlay, light,
-                    normal.getX(), normal.getY(), normal.getZ()
+                    n00 * nx + n01 * ny + n02 * nz,
+                    n10 * nx + n11 * ny + n12 * nz,
+                    n20 * nx + n21 * ny + n22 * nz
             );
 
             //Every 4 verts (1 face)
@@ -387,6 +202,17 @@ public class CustomModelPart {
         return leftToRender;
     }
 
+    //Returns the backing array of the vertex data, laid out per vertex as position, uv, normal.
+    //Can be longer than the data, only the first vertexCount vertices are valid.
+    public float[] getVertexArray() {
+        if (this.vertexData instanceof FloatArrayList)
+            return ((FloatArrayList) this.vertexData).elements();
+
+        //someone swapped the list implementation, so cache a copy as an array list
+        this.vertexData = new FloatArrayList(this.vertexData);
+        return ((FloatArrayList) this.vertexData).elements();
+    }
+
     public int renderExtras(int leftToRender, MatrixStack matrices, VertexConsumerProvider vcp, int light) {
         //Render extra parts
         synchronized (this.renderTasks) {
@@ -396,6 +222,13 @@ public class CustomModelPart {
             }
         }
 
+        synchronized (this.retainedRenderTasks) {
+            for (RenderTask task : this.retainedRenderTasks) {
+                if (leftToRender <= 0) break;
+                leftToRender -= task.render(matrices, vcp, light);
+            }
+        }
+
         //Render hit box
         if (canRenderHitBox) renderHitBox(matrices, vcp.getBuffer(RenderLayer.LINES));
 
@@ -418,10 +251,8 @@ public class CustomModelPart {
         WorldRenderer.drawBox(matrices, vertices, -boxSize, -boxSize, -boxSize, boxSize, boxSize, boxSize, color.getX(), color.getY(), color.getZ(), 1f);
     }
 
-    //clear all extra render tasks
-    public static void clearExtraRendering(CustomModelPart part) {
-        part.renderTasks.clear();
-        part.children.forEach(CustomModelPart::clearExtraRendering);
+    public boolean hasRenderTasks() {
+        return !this.renderTasks.isEmpty() || !this.retainedRenderTasks.isEmpty();
     }
 
     public int getComplexity() {
@@ -654,6 +485,33 @@ public class CustomModelPart {
         this.texSize = newTexSize;
     }
 
+    //Called once the vertex data is rebuilt: drops the spare capacity of the list, and measures the size of the part.
+    public void measureBounds() {
+        this.boundingSize = 0f;
+
+        if (this.vertexCount <= 0)
+            return;
+
+        //makes sure the list is an array list first
+        getVertexArray();
+        ((FloatArrayList) this.vertexData).trim();
+        float[] data = getVertexArray();
+
+        float[] min = {Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE};
+        float[] max = {-Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+
+        for (int i = 0; i < this.vertexCount; i++) {
+            for (int axis = 0; axis < 3; axis++) {
+                float pos = data[i * 8 + axis];
+                min[axis] = Math.min(min[axis], pos);
+                max[axis] = Math.max(max[axis], pos);
+            }
+        }
+
+        for (int axis = 0; axis < 3; axis++)
+            this.boundingSize = Math.max(this.boundingSize, max[axis] - min[axis]);
+    }
+
     public void rebuildAll(Vec2f texSize) {
         rebuild(texSize);
         this.children.forEach(child -> child.rebuildAll(texSize));
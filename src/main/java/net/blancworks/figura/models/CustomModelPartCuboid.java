@@ -289,6 +289,8 @@ public class CustomModelPartCuboid extends CustomModelPart {
 
         this.vertexData = vertexData;
         this.vertexCount = vertexCount;
+
+        measureBounds();
     }
 
     @Override
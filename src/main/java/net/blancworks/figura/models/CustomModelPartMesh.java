@@ -81,6 +81,8 @@ public class CustomModelPartMesh extends CustomModelPart {
 
         this.vertexData = vertexData;
         this.vertexCount = vertexCount;
+
+        measureBounds();
     }
 
     @Override
@@ -0,0 +1,322 @@
+package net.blancworks.figura.models;
+
+import net.blancworks.figura.FiguraMod;
+import net.blancworks.figura.PlayerData;
+import net.blancworks.figura.access.MatrixStackAccess;
+import net.blancworks.figura.config.ConfigManager.Config;
+import net.blancworks.figura.mixin.Matrix4fAccessorMixin;
+import net.blancworks.figura.models.CustomModelPart.ParentType;
+import net.blancworks.figura.models.CustomModelPart.ShaderType;
+import net.blancworks.figura.models.CustomModelPart.TextureType;
+import net.minecraft.client.render.RenderLayer;
+import net.minecraft.client.render.VertexConsumer;
+import net.minecraft.client.render.VertexConsumerProvider;
+import net.minecraft.client.util.math.MatrixStack;
+import net.minecraft.client.util.math.Vector3f;
+import net.minecraft.util.Identifier;
+
+import java.util.ArrayList;
+import java.util.function.Function;
+
+//Renders a model part tree by walking it once per frame.
+//The walk computes every part's matrices, uv offset, color and alpha into a flat list,
+//which is then fed to every layer (textures, extra textures, shaders, render tasks and hitboxes).
+public class CustomModelPartRenderer {
+    //Reused between frames, only ever grows to the size of the biggest tree rendered
+    private final ArrayList<PartState> states = new ArrayList<>();
+    private int size = 0;
+
+    private boolean rendering = false;
+    //parts smaller than this on screen are skipped, see ModelLOD
+    private float minPartSize = 0f;
+
+    //Render tasks and hitboxes expect a stack, so we push the part matrices here instead of allocating new stacks
+    private final MatrixStack taskStack = new MatrixStack();
+
+    public boolean isRendering() {
+        return rendering;
+    }
+
+    public int render(CustomModelPart root, PlayerData data, MatrixStack matrices, MatrixStack transformStack, VertexConsumerProvider vcp, int light, int overlay, float alpha) {
+        boolean applyHiddenTransforms = data.model.applyHiddenTransforms;
+        ParentType renderOnly = data.model.renderOnly;
+        ModelLOD lod = data.model.lod;
+        minPartSize = lod.skipSmallParts ? data.model.minPartSize : 0f;
+        int ret = data.model.leftToRender;
+        data.model.renderOnly = null;
+
+        rendering = true;
+
+        try {
+            //single traversal
+            size = 0;
+            collect(root, ret, matrices, transformStack, 0, 0, 1f, 1f, 1f, alpha, false, null, false, true, (byte) 0, applyHiddenTransforms, renderOnly);
+
+            if (data.model.measuringDemand) {
+                int extraTextures = FiguraMod.currentData != null ? FiguraMod.currentData.extraTextures.size() : 0;
+                measureDemand(data.model, root, extraTextures, false, true, (byte) 0, renderOnly);
+            }
+
+            //main texture
+            ret = emitTextures(ret, vcp, light, overlay, root.getTexture(), RenderLayer::getEntityTranslucent, false);
+
+            //extra textures
+            if (lod.renderExtraTextures) {
+                for (FiguraTexture figuraTexture : FiguraMod.currentData.extraTextures) {
+                    Function<Identifier, RenderLayer> renderLayerGetter = FiguraTexture.EXTRA_TEXTURE_TO_RENDER_LAYER.get(figuraTexture.type);
+
+                    if (renderLayerGetter != null) {
+                        emitTextures(ret, vcp, light, overlay, figuraTexture.id, renderLayerGetter, true);
+                    }
+                }
+            }
+
+            boolean batchingFix = (boolean) Config.ENTITY_BATCHING_FIX.value;
+            int prevRet = ret;
+
+            if (batchingFix)
+                root.draw(vcp);
+
+            //shaders
+            if (lod.renderShaders) {
+                ret = emitShaders(ret, vcp, light, overlay);
+                if (batchingFix && prevRet != ret) {
+                    prevRet = ret;
+                    root.draw(vcp);
+                }
+            }
+
+            //extra stuff and hitboxes
+            ret = emitExtras(ret, vcp, light);
+            if (batchingFix && prevRet != ret)
+                root.draw(vcp);
+        } finally {
+            //drop part references, so removed parts are not kept alive by an idle model
+            for (int i = 0; i < size; i++)
+                states.get(i).clear();
+
+            rendering = false;
+        }
+
+        return ret;
+    }
+
+    //Walks the tree once, applying transforms and storing the state of every part that can render.
+    //Returns the render budget left after the stored parts, and stops walking when it runs out.
+    private int collect(CustomModelPart part, int budget, MatrixStack matrices, MatrixStack transformStack, float u, float v, float r, float g, float b, float alpha, boolean canRender, Identifier texture, boolean cull, boolean extraTex, byte shaders, boolean applyHiddenTransforms, ParentType renderOnly) {
+        //do not render invisible parts
+        if (!part.visible)
+            return budget;
+
+        matrices.push();
+        transformStack.push();
+
+        if (applyHiddenTransforms) {
+            part.applyVanillaTransforms(matrices, transformStack);
+
+            part.applyTransforms(matrices);
+            part.applyTransforms(transformStack);
+
+            part.updateModelMatrices(transformStack);
+        } else if (canRender) {
+            part.applyTransforms(matrices);
+            part.applyTransforms(transformStack);
+        }
+
+        if (renderOnly == null || part.parentType == renderOnly)
+            canRender = true;
+
+        //uv -> color -> alpha -> cull -> texture -> extra tex -> shaders
+        u += part.uvOffset.x;
+        v += part.uvOffset.y;
+
+        r *= part.color.getX();
+        g *= part.color.getY();
+        b *= part.color.getZ();
+
+        alpha = part.alpha * alpha;
+
+        cull |= part.cull;
+
+        if (part.textureType != TextureType.Custom)
+            texture = part.getTexture();
+
+        extraTex &= part.extraTex;
+
+        if (part.shaderType != ShaderType.None)
+            shaders = (byte) (shaders | part.shaderType.id);
+
+        //store!
+        if (canRender && !isTooSmall(part, matrices.peek())) {
+            PartState state = nextState();
+            state.part = part;
+            state.matrix = matrices.peek();
+            state.u = u;
+            state.v = v;
+            state.r = r;
+            state.g = g;
+            state.b = b;
+            state.alpha = alpha;
+            state.texture = texture;
+            state.cull = cull;
+            state.extraTex = extraTex;
+            state.shaders = shaders;
+
+            budget -= part.vertexCount;
+        }
+
+        for (CustomModelPart child : part.children) {
+            if (budget <= 0)
+                break;
+
+            //Don't render special parts.
+            if (child.isSpecial())
+                continue;
+
+            budget = collect(child, budget, matrices, transformStack, u, v, r, g, b, alpha, canRender, texture, cull, extraTex, shaders, applyHiddenTransforms, renderOnly);
+        }
+
+        matrices.pop();
+        transformStack.pop();
+
+        return budget;
+    }
+
+    //Parts with cubes smaller than a pixel still count towards the budget when rendered, but can't be seen.
+    //Only the part itself is skipped, its children can be bigger than it.
+    private boolean isTooSmall(CustomModelPart part, MatrixStack.Entry matrix) {
+        if (minPartSize <= 0f || part.vertexCount == 0 || part.hasRenderTasks())
+            return false;
+
+        Matrix4fAccessorMixin model = (Matrix4fAccessorMixin) (Object) matrix.getModel();
+        float scaleX = model.getA00() * model.getA00() + model.getA10() * model.getA10() + model.getA20() * model.getA20();
+        float scaleY = model.getA01() * model.getA01() + model.getA11() * model.getA11() + model.getA21() * model.getA21();
+        float scaleZ = model.getA02() * model.getA02() + model.getA12() * model.getA12() + model.getA22() * model.getA22();
+        float scale = (float) Math.sqrt(Math.max(scaleX, Math.max(scaleY, scaleZ)));
+
+        return part.boundingSize * scale < minPartSize;
+    }
+
+    //Adds what every layer would draw at full detail to the model, for the frame budget to plan the next frame with.
+    //Walks the whole tree instead of using the collected parts, as the walk stops once the budget runs out,
+    //and a model cut off once would never be given more than what it was cut to. Only needs the flags, not the transforms.
+    private void measureDemand(CustomModel model, CustomModelPart part, int extraTextures, boolean canRender, boolean extraTex, byte shaders, ParentType renderOnly) {
+        if (!part.visible)
+            return;
+
+        if (renderOnly == null || part.parentType == renderOnly)
+            canRender = true;
+
+        extraTex &= part.extraTex;
+
+        if (part.shaderType != ShaderType.None)
+            shaders = (byte) (shaders | part.shaderType.id);
+
+        if (canRender) {
+            int vertices = part.vertexCount;
+
+            model.baseDemand += vertices;
+
+            if (extraTex)
+                model.extraTextureDemand += vertices * extraTextures;
+
+            if (ShaderType.EndPortal.isShader(shaders))
+                model.shaderDemand += vertices * CustomModelPart.END_SHADER_COLORS.size();
+            if (ShaderType.Glint.isShader(shaders))
+                model.shaderDemand += vertices;
+        }
+
+        for (CustomModelPart child : part.children) {
+            if (!child.isSpecial())
+                measureDemand(model, child, extraTextures, canRender, extraTex, shaders, renderOnly);
+        }
+    }
+
+    private PartState nextState() {
+        if (size == states.size())
+            states.add(new PartState());
+
+        return states.get(size++);
+    }
+
+    private int emitTextures(int leftToRender, VertexConsumerProvider vcp, int light, int overlay, Identifier texture, Function<Identifier, RenderLayer> layerFunction, boolean isExtraTex) {
+        //only ask for a new buffer when the layer actually changes
+        Identifier lastTexture = null;
+        boolean lastCull = false;
+        VertexConsumer consumer = null;
+
+        for (int i = 0; i < size && leftToRender > 0; i++) {
+            PartState state = states.get(i);
+
+            if (isExtraTex && !state.extraTex)
+                continue;
+
+            Identifier partTexture = state.texture != null ? state.texture : texture;
+            boolean cull = !isExtraTex && state.cull;
+
+            if (consumer == null || !partTexture.equals(lastTexture) || cull != lastCull) {
+                consumer = vcp.getBuffer(cull ? RenderLayer.getEntityTranslucentCull(partTexture) : layerFunction.apply(partTexture));
+                lastTexture = partTexture;
+                lastCull = cull;
+            }
+
+            leftToRender = state.part.renderCube(leftToRender, state.matrix, consumer, light, overlay, state.u, state.v, state.r, state.g, state.b, state.alpha);
+        }
+
+        return leftToRender;
+    }
+
+    private int emitShaders(int leftToRender, VertexConsumerProvider vcp, int light, int overlay) {
+        for (int i = 0; i < size && leftToRender > 0; i++) {
+            PartState state = states.get(i);
+
+            if (ShaderType.EndPortal.isShader(state.shaders)) {
+                for (int j = 0; j < 18; j++) {
+                    Vector3f rgb = CustomModelPart.END_SHADER_COLORS.get(j);
+                    if (rgb == null) continue;
+                    leftToRender = state.part.renderCube(leftToRender, state.matrix, vcp.getBuffer(RenderLayer.getEndPortal(j)), light, overlay, state.u, state.v, rgb.getX(), rgb.getY(), rgb.getZ(), state.alpha);
+                }
+            }
+            if (ShaderType.Glint.isShader(state.shaders))
+                leftToRender = state.part.renderCube(leftToRender, state.matrix, vcp.getBuffer(RenderLayer.getDirectEntityGlint()), light, overlay, state.u, state.v, state.r, state.g, state.b, state.alpha);
+        }
+
+        return leftToRender;
+    }
+
+    private int emitExtras(int leftToRender, VertexConsumerProvider vcp, int light) {
+        MatrixStackAccess access = (MatrixStackAccess) taskStack;
+
+        for (int i = 0; i < size && leftToRender > 0; i++) {
+            PartState state = states.get(i);
+
+            if (!state.part.hasRenderTasks() && !CustomModelPart.canRenderHitBox)
+                continue;
+
+            access.pushEntry(state.matrix);
+            leftToRender = state.part.renderExtras(leftToRender, taskStack, vcp, light);
+            taskStack.pop();
+        }
+
+        return leftToRender;
+    }
+
+    //Everything a layer needs to know to render one part, computed once per frame.
+    private static class PartState {
+        public CustomModelPart part;
+        public MatrixStack.Entry matrix;
+        public float u, v;
+        public float r, g, b;
+        public float alpha;
+        public Identifier texture;
+        public boolean cull;
+        public boolean extraTex;
+        public byte shaders;
+
+        public void clear() {
+            this.part = null;
+            this.matrix = null;
+            this.texture = null;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package net.blancworks.figura.models;
+
+import net.blancworks.figura.config.ConfigManager.Config;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.entity.Entity;
+import net.minecraft.util.math.Vec3d;
+
+//Picks how much of an avatar is worth rendering, from how far away it is and how big it ends up on screen.
+//Far away avatars cover a handful of pixels, so shaders, extra textures and tiny cubes there are wasted work.
+public enum ModelLOD {
+    //Everything.
+    FULL(true, true, false),
+    //No shaders.
+    REDUCED(false, true, false),
+    //No shaders, no extra textures, and cubes smaller than a pixel are skipped.
+    LOW(false, false, true),
+    //Past the LOD distance, the vanilla model is rendered instead.
+    VANILLA(false, false, true);
+
+    //On screen height, in pixels, an avatar needs to be rendered at a level
+    public static final float FULL_SIZE = 160f;
+    public static final float REDUCED_SIZE = 48f;
+
+    public final boolean renderShaders;
+    public final boolean renderExtraTextures;
+    public final boolean skipSmallParts;
+
+    ModelLOD(boolean renderShaders, boolean renderExtraTextures, boolean skipSmallParts) {
+        this.renderShaders = renderShaders;
+        this.renderExtraTextures = renderExtraTextures;
+        this.skipSmallParts = skipSmallParts;
+    }
+
+    /**
+     * Picks the level to render an entity's avatar with, this frame.
+     *
+     * @param entity the entity the avatar is rendered on, null when it isn't rendered in the world
+     * @return the level to render at
+     */
+    public static ModelLOD forEntity(Entity entity) {
+        if (entity == null)
+            return FULL;
+
+        MinecraftClient client = MinecraftClient.getInstance();
+
+        //gui previews and first person are always rendered in full
+        if (client.currentScreen != null && entity == client.player)
+            return FULL;
+
+        double distance = getDistance(entity);
+        int maxDistance = (int) Config.LOD_DISTANCE.value;
+
+        if (maxDistance > 0 && distance > maxDistance)
+            return VANILLA;
+
+        float size = entity.getHeight() * getPixelsPerBlock(distance);
+
+        if (size >= FULL_SIZE)
+            return FULL;
+        if (size >= REDUCED_SIZE)
+            return REDUCED;
+
+        return LOW;
+    }
+
+    //Returns the less detailed of both levels.
+    public static ModelLOD lowest(ModelLOD a, ModelLOD b) {
+        return a.ordinal() >= b.ordinal() ? a : b;
+    }
+
+    public static double getDistance(Entity entity) {
+        Vec3d camera = MinecraftClient.getInstance().gameRenderer.getCamera().getPos();
+        return Math.sqrt(entity.squaredDistanceTo(camera));
+    }
+
+    //How many pixels tall a block looks at the given distance from the camera.
+    public static float getPixelsPerBlock(double distance) {
+        MinecraftClient client = MinecraftClient.getInstance();
+        double fov = Math.toRadians(client.options.fov);
+        double visibleHeight = 2 * Math.max(distance, 0.05) * Math.tan(fov / 2);
+
+        return (float) (client.getWindow().getFramebufferHeight() / visibleHeight);
+    }
+}
@@ -19,8 +19,6 @@ import java.util.UUID;
 
 public class BlockbenchModelDeserializer implements JsonDeserializer<CustomModel> {
 
-    public static boolean overrideAsPlayerModel = false;
-
     private static final Map<String, CustomModelPart.ParentType> NAME_PARENT_TYPE_TAGS =
             new ImmutableMap.Builder<String, CustomModelPart.ParentType>()
                     .put("HEAD", CustomModelPart.ParentType.Head)
@@ -85,8 +83,7 @@ public class BlockbenchModelDeserializer implements JsonDeserializer<CustomModel
         JsonArray elements = root.get("elements").getAsJsonArray();
         JsonArray outliner = root.get("outliner").getAsJsonArray();
 
-        if (meta.has("model_format") && meta.get("model_format").getAsString().equals("skin"))
-            overrideAsPlayerModel = true;
+        boolean asPlayerModel = meta.has("model_format") && meta.get("model_format").getAsString().equals("skin");
 
         retModel.defaultTextureSize = new Vec2f(resolution.get("width").getAsFloat(), resolution.get("height").getAsFloat());
 
@@ -103,10 +100,18 @@ public class BlockbenchModelDeserializer implements JsonDeserializer<CustomModel
                 parsedParts.put(id, part);
         }
 
+        buildOutliner(outliner, retModel, parsedParts, asPlayerModel);
+        finishModel(retModel);
+        return retModel;
+    }
+
+    //Builds the part hierarchy from the outliner, out of the already parsed elements.
+    //Player models get their groups remapped onto the vanilla player parts.
+    public void buildOutliner(Iterable<JsonElement> outliner, CustomModel target, Map<UUID, CustomModelPart> parsedParts, boolean asPlayerModel) {
         for (JsonElement element : outliner) {
             if (element.isJsonObject()) {
                 //If the element is a json object, it's a group, so parse the group.
-                buildGroup(element.getAsJsonObject(), retModel, parsedParts, null, new Vector3f());
+                buildGroup(element.getAsJsonObject(), target, parsedParts, null, new Vector3f(), asPlayerModel);
             } else {
                 //If the element is a string, it's an element, so just add it to the children.
                 String s = element.getAsString();
@@ -114,32 +119,32 @@ public class BlockbenchModelDeserializer implements JsonDeserializer<CustomModel
                 if (s != null) {
                     CustomModelPart part = parsedParts.get(UUID.fromString(s));
                     if (part != null)
-                        retModel.allParts.add(part);
+                        target.allParts.add(part);
                 }
             }
         }
+    }
 
+    //Writes the parsed parts into the model NBT, once every part was built.
+    public void finishModel(CustomModel model) {
         ListTag partList = new ListTag();
-        retModel.allParts.forEach(part -> {
+        model.allParts.forEach(part -> {
             CompoundTag partNbt = new CompoundTag();
             part.writeNbt(partNbt);
             partList.add(partNbt);
         });
-        retModel.modelNbt.put("parts", partList);
+        model.modelNbt.put("parts", partList);
 
         ListTag uv = new ListTag();
-        uv.add(FloatTag.of(retModel.defaultTextureSize.x));
-        uv.add(FloatTag.of(retModel.defaultTextureSize.y));
-        retModel.modelNbt.put("uv", uv);
+        uv.add(FloatTag.of(model.defaultTextureSize.x));
+        uv.add(FloatTag.of(model.defaultTextureSize.y));
+        model.modelNbt.put("uv", uv);
 
-        //Reset this value.
-        overrideAsPlayerModel = false;
-        retModel.sortAllParts();
-        return retModel;
+        model.sortAllParts();
     }
 
     //Builds out a group from a JsonObject that specifies the group in the outline.
-    public void buildGroup(JsonObject group, CustomModel target, Map<UUID, CustomModelPart> allParts, CustomModelPart parent, Vector3f playerModelOffset) {
+    public void buildGroup(JsonObject group, CustomModel target, Map<UUID, CustomModelPart> allParts, CustomModelPart parent, Vector3f playerModelOffset, boolean asPlayerModel) {
         if (group.has("visibility") && !group.get("visibility").getAsBoolean()) return;
 
         CustomModelPart groupPart = new CustomModelPart();
@@ -168,7 +173,7 @@ public class BlockbenchModelDeserializer implements JsonDeserializer<CustomModel
                         }
                     }
                     //Check for player model parts.
-                    if (overrideAsPlayerModel) {
+                    if (asPlayerModel) {
                         for (Map.Entry<String, PlayerSkinRemap> entry : PLAYER_SKIN_REMAPS.entrySet()) {
                             if (groupPart.name.contains(entry.getKey())) {
                                 groupPart.parentType = entry.getValue().parentType;
@@ -193,7 +198,7 @@ public class BlockbenchModelDeserializer implements JsonDeserializer<CustomModel
             for (JsonElement child : children) {
                 if (child.isJsonObject()) {
                     //If the element is a json object, it's a group, so parse the group.
-                    buildGroup(child.getAsJsonObject(), target, allParts, groupPart, playerModelOffset.copy());
+                    buildGroup(child.getAsJsonObject(), target, allParts, groupPart, playerModelOffset.copy(), asPlayerModel);
                 } else {
                     //If the element is a string, it's an element, so just add it to the children.
                     String s = child.getAsString();
@@ -399,6 +404,25 @@ public class BlockbenchModelDeserializer implements JsonDeserializer<CustomModel
         return null;
     }
 
+    /**
+     * Parses an element, and the elements nested in it, straight into parts by UUID.
+     */
+    public void parseElementTree(JsonObject obj, CustomModel target, Map<UUID, CustomModelPart> parsedParts) {
+        if (!obj.has("uuid"))
+            return;
+
+        CustomModelPart part = parseElement(obj, target);
+        if (part != null)
+            parsedParts.put(UUID.fromString(obj.get("uuid").getAsString()), part);
+
+        if (obj.has("children") && obj.get("children").isJsonArray()) {
+            for (JsonElement child : obj.get("children").getAsJsonArray()) {
+                if (child.isJsonObject())
+                    parseElementTree(child.getAsJsonObject(), target, parsedParts);
+            }
+        }
+    }
+
     /**
      * Sorts out all the things in a json array out by UUID.
      */
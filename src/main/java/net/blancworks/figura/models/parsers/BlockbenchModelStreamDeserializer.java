@@ -0,0 +1,143 @@
+package net.blancworks.figura.models.parsers;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import net.blancworks.figura.models.CustomModel;
+import net.blancworks.figura.models.CustomModelPart;
+import net.minecraft.util.math.Vec2f;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Reads a Blockbench model straight from a stream, instead of loading the whole file into a JSON tree first.
+ * Only one element is held as JSON at a time, and everything the model doesn't use (embedded textures, animations, history...)
+ * is skipped without ever being read into memory, which is most of a typical .bbmodel file.
+ */
+public class BlockbenchModelStreamDeserializer {
+    private final BlockbenchModelDeserializer deserializer = new BlockbenchModelDeserializer();
+    private final JsonParser parser = new JsonParser();
+
+    //remaps the groups onto the vanilla player parts, also turned on by a "skin" model format in the meta
+    private final boolean asPlayerModel;
+
+    public BlockbenchModelStreamDeserializer() {
+        this(false);
+    }
+
+    public BlockbenchModelStreamDeserializer(boolean asPlayerModel) {
+        this.asPlayerModel = asPlayerModel;
+    }
+
+    public CustomModel read(Reader source) throws IOException {
+        boolean asPlayerModel = this.asPlayerModel;
+        CustomModel model = new CustomModel();
+        Map<UUID, CustomModelPart> parsedParts = new Object2ObjectOpenHashMap<>();
+
+        //parts need the texture size, so elements that come before the resolution wait for it
+        List<JsonElement> pendingElements = new ArrayList<>();
+        //groups point at elements, so they're built once every element was read
+        List<JsonElement> outliner = new ArrayList<>();
+
+        JsonReader reader = new JsonReader(source);
+        reader.setLenient(true);
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "meta":
+                    //only groups depend on it, and they're built once the whole stream was read, so the meta can come anywhere
+                    asPlayerModel |= readMeta(reader);
+                    break;
+                case "resolution":
+                    readResolution(reader, model);
+
+                    for (JsonElement element : pendingElements)
+                        parseElement(element, model, parsedParts);
+                    pendingElements.clear();
+                    break;
+                case "elements":
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        JsonElement element = parser.parse(reader);
+
+                        if (model.defaultTextureSize == null)
+                            pendingElements.add(element);
+                        else
+                            parseElement(element, model, parsedParts);
+                    }
+                    reader.endArray();
+                    break;
+                case "outliner":
+                    reader.beginArray();
+                    while (reader.hasNext())
+                        outliner.add(parser.parse(reader));
+                    reader.endArray();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        if (model.defaultTextureSize == null)
+            throw new JsonParseException("Model has no resolution");
+
+        deserializer.buildOutliner(outliner, model, parsedParts, asPlayerModel);
+        deserializer.finishModel(model);
+        return model;
+    }
+
+    private void parseElement(JsonElement element, CustomModel model, Map<UUID, CustomModelPart> parsedParts) {
+        if (element.isJsonObject())
+            deserializer.parseElementTree(element.getAsJsonObject(), model, parsedParts);
+    }
+
+    //Returns true if the model is a player model.
+    private boolean readMeta(JsonReader reader) throws IOException {
+        boolean skin = false;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals("model_format") && reader.peek() == JsonToken.STRING) {
+                skin = reader.nextString().equals("skin");
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return skin;
+    }
+
+    private void readResolution(JsonReader reader, CustomModel model) throws IOException {
+        float width = 0f, height = 0f;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "width":
+                    width = (float) reader.nextDouble();
+                    break;
+                case "height":
+                    height = (float) reader.nextDouble();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        model.defaultTextureSize = new Vec2f(width, height);
+    }
+}
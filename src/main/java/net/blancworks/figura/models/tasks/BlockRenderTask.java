@@ -15,6 +15,11 @@ public class BlockRenderTask extends RenderTask {
         this.state = state;
     }
 
+    @Override
+    public boolean isSameAs(RenderTask other) {
+        return super.isSameAs(other) && ((BlockRenderTask) other).state == this.state;
+    }
+
     @Override
     public int render(MatrixStack matrices, VertexConsumerProvider vcp, int light) {
         matrices.push();
@@ -25,7 +30,7 @@ public class BlockRenderTask extends RenderTask {
         MinecraftClient client = MinecraftClient.getInstance();
         client.getBlockRenderManager().renderBlockAsEntity(state, matrices, vcp, emissive ? 0xF000F0 : light, OverlayTexture.DEFAULT_UV);
 
-        int complexity = 4 * client.getBlockRenderManager().getModel(state).getQuads(state, null, client.world.random).size();
+        int complexity = QuadCountCache.getVertexCount(client.getBlockRenderManager().getModel(state), state);
 
         matrices.pop();
         return complexity;
@@ -19,6 +19,11 @@ public class ItemRenderTask extends RenderTask {
         this.mode = mode;
     }
 
+    @Override
+    public boolean isSameAs(RenderTask other) {
+        return super.isSameAs(other) && ((ItemRenderTask) other).mode == this.mode && ItemStack.areEqual(((ItemRenderTask) other).stack, this.stack);
+    }
+
     @Override
     public int render(MatrixStack matrices, VertexConsumerProvider vcp, int light) {
         matrices.push();
@@ -29,7 +34,7 @@ public class ItemRenderTask extends RenderTask {
         MinecraftClient client = MinecraftClient.getInstance();
         client.getItemRenderer().renderItem(stack, mode, emissive ? 0xF000F0 : light, OverlayTexture.DEFAULT_UV, matrices, vcp);
 
-        int complexity = 4 * client.getItemRenderer().getHeldItemModel(stack, null, null).getQuads(null, null, client.world.random).size();
+        int complexity = QuadCountCache.getVertexCount(client.getItemRenderer().getHeldItemModel(stack, null, null), null);
 
         matrices.pop();
         return complexity;
@@ -0,0 +1,53 @@
+package net.blancworks.figura.models.tasks;
+
+import net.minecraft.block.BlockState;
+import net.minecraft.client.render.model.BakedModel;
+import net.minecraft.util.math.Direction;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.WeakHashMap;
+
+//Remembers how many vertices item and block models have, so render tasks don't list their quads every frame.
+//Keyed by the baked model itself, so models replaced by a resource reload are dropped along with their counts,
+//then by block state, as multipart models (fences, walls, redstone...) have different quads for every state.
+public final class QuadCountCache {
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    //only used from the render thread
+    private static final Map<BakedModel, Map<BlockState, Integer>> VERTEX_COUNTS = new WeakHashMap<>();
+    private static final Random RANDOM = new Random();
+
+    /**
+     * Gets the vertex count of a model, including the quads only drawn on visible faces.
+     *
+     * @param model the model
+     * @param state the block state the model is for, null for items
+     * @return 4 vertices per quad
+     */
+    public static int getVertexCount(BakedModel model, BlockState state) {
+        //items have no state, they're stored under null
+        Map<BlockState, Integer> counts = VERTEX_COUNTS.computeIfAbsent(model, m -> new HashMap<>());
+        Integer count = counts.get(state);
+        if (count != null)
+            return count;
+
+        int quads = 0;
+        try {
+            RANDOM.setSeed(42L);
+            quads += model.getQuads(state, null, RANDOM).size();
+
+            for (Direction direction : DIRECTIONS) {
+                RANDOM.setSeed(42L);
+                quads += model.getQuads(state, direction, RANDOM).size();
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        count = quads * 4;
+        counts.put(state, count);
+        return count;
+    }
+}
@@ -17,6 +17,12 @@ public abstract class RenderTask {
 
     public abstract int render(MatrixStack matrices, VertexConsumerProvider vcp, int light);
 
+    //Returns true if both tasks render exactly the same thing, used to skip updates that don't change anything.
+    public boolean isSameAs(RenderTask other) {
+        return other != null && other.getClass() == this.getClass() && other.emissive == this.emissive
+                && other.pos.equals(this.pos) && other.rot.equals(this.rot) && other.scale.equals(this.scale);
+    }
+
     public void transform(MatrixStack matrices) {
         matrices.multiply(Vector3f.POSITIVE_X.getDegreesQuaternion(-rot.getX()));
         matrices.multiply(Vector3f.POSITIVE_Y.getDegreesQuaternion(-rot.getY()));
@@ -1,5 +1,6 @@
 package net.blancworks.figura.models.tasks;
 
+import net.blancworks.figura.utils.TextMeshCache;
 import net.minecraft.client.MinecraftClient;
 import net.minecraft.client.font.TextRenderer;
 import net.minecraft.client.render.VertexConsumerProvider;
@@ -16,6 +17,11 @@ public class TextRenderTask extends RenderTask {
         this.text = text;
     }
 
+    @Override
+    public boolean isSameAs(RenderTask other) {
+        return super.isSameAs(other) && ((TextRenderTask) other).text.equals(this.text);
+    }
+
     @Override
     public int render(MatrixStack matrices, VertexConsumerProvider vcp, int light) {
         matrices.push();
@@ -23,7 +29,7 @@ public class TextRenderTask extends RenderTask {
         this.transform(matrices);
         matrices.scale(0.025f, 0.025f, 0.025f);
 
-        int instructions = textRenderer.draw(text, 0, 0, 0xFFFFFF, false, matrices.peek().getModel(), vcp, false, 0, emissive ? 0xF000F0 : light);
+        int instructions = TextMeshCache.draw(textRenderer, text, 0, 0, 0xFFFFFF, false, matrices.peek().getModel(), vcp, false, 0, emissive ? 0xF000F0 : light);
 
         matrices.pop();
         return instructions;
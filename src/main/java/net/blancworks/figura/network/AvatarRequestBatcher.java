@@ -0,0 +1,122 @@
+package net.blancworks.figura.network;
+
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.entity.player.PlayerEntity;
+import net.minecraft.util.math.Vec3d;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//Gathers avatar and hash requests for a few ticks, then hands them to the network manager as one batch,
+//nearest players first, so joining a crowded server doesn't queue up one network task per player.
+//Also decodes downloaded avatars off the socket thread, so the next response can be read in the meantime.
+public final class AvatarRequestBatcher {
+    //Ticks to wait for more requests after the first one, before sending the batch.
+    public static final int BATCH_WINDOW = 5;
+    //Most requests sent at once, the rest wait for the next batch, which is sorted again.
+    public static final int MAX_BATCH_SIZE = 32;
+    public static final int DECODE_THREADS = 2;
+
+    private static final Map<UUID, Request> PENDING = new LinkedHashMap<>();
+    private static int firstRequestTick = -1;
+
+    private static final AtomicInteger DECODE_THREAD_COUNT = new AtomicInteger();
+    private static final ExecutorService DECODER = Executors.newFixedThreadPool(DECODE_THREADS, runnable -> {
+        Thread thread = new Thread(runnable, "Figura Avatar Decoder #" + DECODE_THREAD_COUNT.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+    //Player -> the last decode queued for them, so one player's avatars are still applied in the order they arrived
+    private static final Map<UUID, CompletableFuture<Void>> DECODING = new ConcurrentHashMap<>();
+
+    public static synchronized void requestAvatar(UUID id, int tick) {
+        getRequest(id, tick).avatar = true;
+    }
+
+    public static synchronized void requestHash(UUID id, int tick) {
+        getRequest(id, tick).hash = true;
+    }
+
+    private static Request getRequest(UUID id, int tick) {
+        if (PENDING.isEmpty())
+            firstRequestTick = tick;
+
+        return PENDING.computeIfAbsent(id, Request::new);
+    }
+
+    /**
+     * Takes the next batch of requests, once the batch window has passed.
+     *
+     * @param tick the current tick
+     * @return the requests to send, nearest players first, or an empty list if the batch isn't ready yet
+     */
+    public static synchronized List<Request> poll(int tick) {
+        if (PENDING.isEmpty() || tick - firstRequestTick < BATCH_WINDOW)
+            return Collections.emptyList();
+
+        List<Request> batch = new ArrayList<>(PENDING.values());
+
+        //nearest first, players out of render distance last
+        Vec3d cameraPos = getCameraPos();
+        if (cameraPos != null) {
+            for (Request request : batch)
+                request.distance = getDistance(request.id, cameraPos);
+
+            batch.sort(Comparator.comparingDouble(request -> request.distance));
+        }
+
+        if (batch.size() > MAX_BATCH_SIZE)
+            batch = new ArrayList<>(batch.subList(0, MAX_BATCH_SIZE));
+
+        for (Request request : batch)
+            PENDING.remove(request.id);
+
+        //the rest goes out right away on the next tick
+        firstRequestTick = tick - BATCH_WINDOW;
+
+        return batch;
+    }
+
+    private static Vec3d getCameraPos() {
+        MinecraftClient client = MinecraftClient.getInstance();
+        if (client.world == null || client.gameRenderer == null)
+            return null;
+
+        return client.gameRenderer.getCamera().getPos();
+    }
+
+    private static double getDistance(UUID id, Vec3d cameraPos) {
+        PlayerEntity player = MinecraftClient.getInstance().world.getPlayerByUuid(id);
+        if (player == null)
+            return Double.MAX_VALUE;
+
+        return player.squaredDistanceTo(cameraPos);
+    }
+
+    //Decodes and applies a downloaded avatar on the decoder threads.
+    public static void decode(UUID id, Runnable task) {
+        CompletableFuture<Void> future = DECODING.compute(id, (key, previous) -> {
+            if (previous == null || previous.isDone())
+                return CompletableFuture.runAsync(task, DECODER);
+
+            return previous.exceptionally(error -> null).thenRunAsync(task, DECODER);
+        });
+
+        future.whenComplete((unused, error) -> DECODING.remove(id, future));
+    }
+
+    public static class Request {
+        public final UUID id;
+        public boolean avatar = false;
+        public boolean hash = false;
+        private double distance = Double.MAX_VALUE;
+
+        public Request(UUID id) {
+            this.id = id;
+        }
+    }
+}
@@ -122,8 +122,12 @@ public class FiguraNetworkManager implements IFiguraNetwork {
 
                         String hashString = Base64.getEncoder().encodeToString(hashBytes);
                         
-                        PlayerData data =  PlayerDataManager.getDataForPlayer(id);
-                        
+                        PlayerDataManager.PendingDownload download = PlayerDataManager.takeDownload(id);
+                        if (download == null)
+                            return;
+
+                        PlayerData data = download.targetData;
+
                         data.loadFromNbt(nbt);
                         data.lastHash = getAvatarHashSync(id);
                         data.saveToCache();
@@ -163,8 +167,9 @@ public class FiguraNetworkManager implements IFiguraNetwork {
             String newHash = getAvatarHashSync(playerID);
             
             if(!newHash.equals(previousHash)){
-                PlayerData data = PlayerDataManager.getDataForPlayer(playerID);
-                data.isInvalidated = true;
+                PlayerData data = PlayerDataManager.getLoadedData(playerID);
+                if (data != null)
+                    data.isInvalidated = true;
             }
         });
     }
@@ -0,0 +1,205 @@
+package net.blancworks.figura.network;
+
+import net.blancworks.figura.FiguraMod;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+//Sends everything going to the Figura server from one dedicated thread, fed by lock-free queues any thread can add to.
+//Traffic is split into lanes: control messages (subscriptions, avatar requests) go out first, then pings,
+//then a single bulk message (like an avatar upload) at a time, so big transfers never hold up pings or requests.
+public final class NetworkSendQueue {
+    //Time to wait between attempts to connect, when the server can't be reached.
+    public static final long RECONNECT_DELAY_MS = 5000;
+
+    public enum Lane {
+        //Small messages that need a connection, they wait for one.
+        CONTROL(1024, true),
+        //Pings are only useful right away, so they're dropped while disconnected, or when too many are waiting.
+        PING(64, false),
+        //Large messages that need a connection, they wait for one.
+        BULK(16, true);
+
+        public final int maxQueued;
+        public final boolean waitsForConnection;
+
+        private final ConcurrentLinkedQueue<Task> queue = new ConcurrentLinkedQueue<>();
+        //ConcurrentLinkedQueue.size() walks the whole queue, so the size is tracked separately
+        private final AtomicInteger queued = new AtomicInteger();
+        private final AtomicInteger dropped = new AtomicInteger();
+        //Time between queueing and sending, in microseconds
+        private volatile long lastLatency = 0;
+        private volatile long averageLatency = 0;
+
+        Lane(int maxQueued, boolean waitsForConnection) {
+            this.maxQueued = maxQueued;
+            this.waitsForConnection = waitsForConnection;
+        }
+
+        public int getQueuedCount() {
+            return queued.get();
+        }
+
+        public int getDroppedCount() {
+            return dropped.get();
+        }
+
+        public long getLastLatency() {
+            return lastLatency;
+        }
+
+        public long getAverageLatency() {
+            return averageLatency;
+        }
+
+        private Task poll() {
+            Task task = queue.poll();
+            if (task != null)
+                queued.decrementAndGet();
+            return task;
+        }
+
+        private void run(Task task) {
+            long latency = (System.nanoTime() - task.queuedTime) / 1000;
+            lastLatency = latency;
+            averageLatency = (averageLatency * 7 + latency) / 8;
+
+            try {
+                task.runnable.run();
+                task.future.complete(null);
+            } catch (Throwable e) {
+                e.printStackTrace();
+                task.future.completeExceptionally(e);
+            }
+        }
+
+        private void dropAll() {
+            Task task;
+            while ((task = poll()) != null) {
+                dropped.incrementAndGet();
+                task.future.complete(null);
+            }
+        }
+    }
+
+    private static Thread thread;
+    private static BooleanSupplier isConnected;
+    private static Supplier<CompletableFuture<?>> connector;
+
+    private static CompletableFuture<?> connecting;
+    private static long lastConnectTime = 0;
+
+    //Starts the I/O thread, if it isn't running yet.
+    public static synchronized void start(BooleanSupplier isConnected, Supplier<CompletableFuture<?>> connector) {
+        NetworkSendQueue.isConnected = isConnected;
+        NetworkSendQueue.connector = connector;
+
+        if (thread != null)
+            return;
+
+        thread = new Thread(NetworkSendQueue::run, "Figura Network I/O");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Queues a message to be sent on the I/O thread.
+     *
+     * @param lane the lane the message goes through
+     * @param task sends the message
+     * @return a future completed once the task ran, or once it was dropped
+     */
+    public static CompletableFuture<Void> send(Lane lane, Runnable task) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+
+        if (lane.queued.incrementAndGet() > lane.maxQueued) {
+            lane.queued.decrementAndGet();
+            lane.dropped.incrementAndGet();
+            future.complete(null);
+            return future;
+        }
+
+        lane.queue.add(new Task(task, future));
+
+        if (thread != null)
+            LockSupport.unpark(thread);
+
+        return future;
+    }
+
+    private static void run() {
+        while (true) {
+            try {
+                if (!isConnected.getAsBoolean()) {
+                    Lane.PING.dropAll();
+
+                    //only connect when something is waiting to be sent
+                    if (Lane.CONTROL.getQueuedCount() > 0 || Lane.BULK.getQueuedCount() > 0) {
+                        connect();
+                        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(100));
+                    } else {
+                        LockSupport.park();
+                    }
+                    continue;
+                }
+
+                Task task = Lane.CONTROL.poll();
+                Lane lane = Lane.CONTROL;
+
+                if (task == null) {
+                    task = Lane.PING.poll();
+                    lane = Lane.PING;
+                }
+
+                if (task == null) {
+                    task = Lane.BULK.poll();
+                    lane = Lane.BULK;
+                }
+
+                //the queues are checked again after unpark, so a task added right before parking isn't missed
+                if (task == null) {
+                    LockSupport.park();
+                    continue;
+                }
+
+                lane.run(task);
+            } catch (Throwable e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    //Connecting blocks while authenticating, so it runs on its own instead of on the I/O thread.
+    private static void connect() {
+        if (connecting != null && !connecting.isDone())
+            return;
+
+        long time = System.currentTimeMillis();
+        if (time - lastConnectTime < RECONNECT_DELAY_MS)
+            return;
+        lastConnectTime = time;
+
+        connecting = CompletableFuture.supplyAsync(connector).thenCompose(future -> future).whenComplete((unused, error) -> {
+            if (error != null)
+                FiguraMod.LOGGER.warn("Failed to connect to the Figura server");
+
+            LockSupport.unpark(thread);
+        });
+    }
+
+    private static class Task {
+        public final Runnable runnable;
+        public final CompletableFuture<Void> future;
+        public final long queuedTime = System.nanoTime();
+
+        public Task(Runnable runnable, CompletableFuture<Void> future) {
+            this.runnable = runnable;
+            this.future = future;
+        }
+    }
+}
@@ -31,16 +31,13 @@ import java.net.InetAddress;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.Queue;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
-import java.util.function.Supplier;
 
 
 public class NewFiguraNetworkManager implements IFiguraNetwork {
 
-    public static CompletableFuture<?> networkTasks;
-
     //The protocol version for this version of the mod.
     public static final int PROTOCOL_VERSION = 0;
 
@@ -80,34 +77,13 @@ public class NewFiguraNetworkManager implements IFiguraNetwork {
     private static final ArrayList<UUID> allSubscriptions = new ArrayList<>();
     private static final ArrayList<UUID> newSubscriptions = new ArrayList<>();
 
-    private static CompletableFuture<?> doTask(Runnable toRun) {
-        if (networkTasks == null || networkTasks.isDone()) {
-            networkTasks = CompletableFuture.runAsync(toRun);
-        } else {
-            networkTasks.thenRun(toRun);
-        }
-
-        return networkTasks;
+    public NewFiguraNetworkManager() {
+        NetworkSendQueue.start(NewFiguraNetworkManager::isConnected, this::ensureConnection);
     }
 
-    private static CompletableFuture<?> doTask(Supplier<CompletableFuture<?>> toRun) {
-        if (networkTasks == null || networkTasks.isDone()) {
-            networkTasks = toRun.get();
-        } else {
-            networkTasks.thenCompose(x -> toRun.get());
-        }
-
-        return networkTasks;
-    }
-
-    private static <T> CompletableFuture<?> doTaskSupply(Supplier<T> toRun) {
-        if (networkTasks == null || networkTasks.isDone()) {
-            networkTasks = CompletableFuture.supplyAsync(toRun);
-        } else {
-            CompletableFuture.supplyAsync(toRun);
-        }
-
-        return networkTasks;
+    //Whether the socket is open, and the server told us its message ids.
+    public static boolean isConnected() {
+        return currWebSocket != null && currWebSocket.isOpen() && msgRegistry != null && !msgRegistry.isEmpty();
     }
 
     public static void subscribe(UUID playerID) {
@@ -138,13 +114,17 @@ public class NewFiguraNetworkManager implements IFiguraNetwork {
                 newSubscriptions.toArray(ids);
                 newSubscriptions.clear();
 
-                doTask(() -> new SubscribeToUsersMessageSender(ids).sendMessage(currWebSocket));
+                NetworkSendQueue.send(NetworkSendQueue.Lane.CONTROL, () -> new SubscribeToUsersMessageSender(ids).sendMessage(currWebSocket));
             }
         } else if (allSubscriptions.size() > 0) {
             newSubscriptions.addAll(allSubscriptions);
             allSubscriptions.clear();
         }
 
+        List<AvatarRequestBatcher.Request> batch = AvatarRequestBatcher.poll(FiguraMod.ticksElapsed);
+        if (!batch.isEmpty())
+            NetworkSendQueue.send(NetworkSendQueue.Lane.CONTROL, () -> sendAvatarRequests(batch));
+
         //If the old token we had is old enough, re-auth us.
         Date currTime = new Date();
 
@@ -153,57 +133,55 @@ public class NewFiguraNetworkManager implements IFiguraNetwork {
         else if (tokenReceivedTime != null && currTime.getTime() - tokenReceivedTime.getTime() > TOKEN_LIFETIME) {
             tokenReauthCooldown = TOKEN_REAUTH_WAIT_TIME; //Wait
 
-            //Auth user ASAP
-            doTask(() -> authUser(true));
+            //Auth user ASAP, off the I/O thread since it blocks
+            CompletableFuture.runAsync(() -> authUser(true));
         }
     }
 
+    //Avatar and hash requests are batched, see AvatarRequestBatcher.
     @Override
     public CompletableFuture<?> getAvatarData(UUID id) {
-        doTask(this::ensureConnection);
-        return doTask(() -> {
-            try {
-                if (currWebSocket != null && currWebSocket.isOpen())
-                    new UserGetCurrentAvatarMessageSender(id).sendMessage(NewFiguraNetworkManager.currWebSocket);
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-        });
+        AvatarRequestBatcher.requestAvatar(id, FiguraMod.ticksElapsed);
+        return CompletableFuture.completedFuture(null);
     }
 
     @Override
     public CompletableFuture<?> postAvatar() {
-        doTask(this::ensureConnection);
-        return doTask(() -> {
-            //Get NBT tag for local player avatar
-            if (currWebSocket != null && currWebSocket.isOpen()) {
-                LocalPlayerData data = PlayerDataManager.localPlayer;
+        CompletableFuture<Void> uploaded = new CompletableFuture<>();
 
-                //mark as not local
-                data.isLocalAvatar = false;
+        //Compress on the load thread, only the upload itself goes through the I/O thread.
+        FiguraMod.doTask(() -> {
+            LocalPlayerData data = PlayerDataManager.localPlayer;
 
+            try {
                 //get nbt
                 CompoundTag nbt = new CompoundTag();
                 data.writeNbt(nbt);
 
-                try {
-                    //Set up streams.
-                    ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                    DataOutputStream nbtDataStream = new DataOutputStream(baos);
+                //Set up streams.
+                ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                DataOutputStream nbtDataStream = new DataOutputStream(baos);
 
-                    NbtIo.writeCompressed(nbt, nbtDataStream);
+                NbtIo.writeCompressed(nbt, nbtDataStream);
 
-                    byte[] result = baos.toByteArray();
+                byte[] result = baos.toByteArray();
+                nbtDataStream.close();
 
-                    new AvatarUploadMessageSender(result).sendMessage(currWebSocket);
+                NetworkSendQueue.send(NetworkSendQueue.Lane.BULK, () -> {
+                    if (currWebSocket != null && currWebSocket.isOpen()) {
+                        //mark as not local
+                        data.isLocalAvatar = false;
 
-                    nbtDataStream.close();
-                    baos.close();
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
+                        new AvatarUploadMessageSender(result).sendMessage(currWebSocket);
+                    }
+                }).whenComplete((unused, error) -> uploaded.complete(null));
+            } catch (Exception e) {
+                e.printStackTrace();
+                uploaded.complete(null);
             }
         });
+
+        return uploaded;
     }
 
     @Override
@@ -213,8 +191,7 @@ public class NewFiguraNetworkManager implements IFiguraNetwork {
 
     @Override
     public CompletableFuture<?> deleteAvatar() {
-        doTask(this::ensureConnection);
-        return doTask(() -> {
+        return NetworkSendQueue.send(NetworkSendQueue.Lane.CONTROL, () -> {
             try {
                 if (currWebSocket != null && currWebSocket.isOpen()) {
                     new UserDeleteCurrentAvatarMessageSender().sendMessage(currWebSocket);
@@ -229,15 +206,25 @@ public class NewFiguraNetworkManager implements IFiguraNetwork {
 
     @Override
     public CompletableFuture<?> checkAvatarHash(UUID playerID, String lastHash) {
-        doTask(this::ensureConnection);
-        return doTask(() -> {
-            try {
-                if (currWebSocket != null && currWebSocket.isOpen())
-                    new UserGetCurrentAvatarHashMessageSender(playerID).sendMessage(currWebSocket);
-            } catch (Exception e) {
-                e.printStackTrace();
+        AvatarRequestBatcher.requestHash(playerID, FiguraMod.ticksElapsed);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    //Sends a whole batch of requests in one task, without waiting on the responses in between.
+    private void sendAvatarRequests(List<AvatarRequestBatcher.Request> batch) {
+        try {
+            if (currWebSocket == null || !currWebSocket.isOpen())
+                return;
+
+            for (AvatarRequestBatcher.Request request : batch) {
+                if (request.hash)
+                    new UserGetCurrentAvatarHashMessageSender(request.id).sendMessage(currWebSocket);
+                if (request.avatar)
+                    new UserGetCurrentAvatarMessageSender(request.id).sendMessage(currWebSocket);
             }
-        });
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
     }
 
     @Override
@@ -259,13 +246,11 @@ public class NewFiguraNetworkManager implements IFiguraNetwork {
         }
     }
 
-    public void sendPing(Queue<CustomScript.LuaPing> pings) {
+    public void sendPing(List<CustomScript.LuaPing> pings) {
         PingMessageSender pms = new PingMessageSender(pings);
-        doTask(() -> {
+        NetworkSendQueue.send(NetworkSendQueue.Lane.PING, () -> {
             try {
-                if (msgRegistry.isEmpty())
-                    return;
-                if (currWebSocket != null && currWebSocket.isOpen())
+                if (isConnected())
                     pms.sendMessage(currWebSocket);
             } catch (Exception e) {
                 e.printStackTrace();
@@ -0,0 +1,133 @@
+package net.blancworks.figura.network.messages;
+
+import com.google.common.io.LittleEndianDataOutputStream;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+//A growable little endian buffer messages are written into.
+//Every thread keeps one around and reuses it for each message it sends, instead of allocating new streams per message.
+public class MessageBuffer {
+    public static final int INITIAL_SIZE = 1024;
+    //Buffers that grew past this (like for an avatar upload) aren't kept after the message was sent.
+    public static final int MAX_POOLED_SIZE = 64 * 1024;
+
+    private static final ThreadLocal<MessageBuffer> POOL = ThreadLocal.withInitial(() -> new MessageBuffer(INITIAL_SIZE));
+
+    private ByteBuffer buffer;
+    private final LittleEndianDataOutputStream writer;
+    private boolean inUse = false;
+
+    public MessageBuffer(int initialSize) {
+        this.buffer = ByteBuffer.allocate(initialSize).order(ByteOrder.LITTLE_ENDIAN);
+        this.writer = new LittleEndianDataOutputStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+                writeByte(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                MessageBuffer.this.write(b, off, len);
+            }
+        });
+    }
+
+    /**
+     * Takes this thread's buffer, emptied.
+     * Has to be given back with {@link #release()} once the message is sent.
+     */
+    public static MessageBuffer acquire() {
+        MessageBuffer buffer = POOL.get();
+
+        //a message being written while another one is (like a sender sending another message), gets its own buffer
+        if (buffer.inUse)
+            return new MessageBuffer(INITIAL_SIZE);
+
+        buffer.inUse = true;
+        buffer.buffer.clear();
+        return buffer;
+    }
+
+    public void release() {
+        inUse = false;
+
+        if (POOL.get() == this && buffer.capacity() > MAX_POOLED_SIZE)
+            POOL.set(new MessageBuffer(INITIAL_SIZE));
+    }
+
+    //Stream view of this buffer, for writing with the stream based helpers.
+    public LittleEndianDataOutputStream getWriter() {
+        return writer;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (buffer.remaining() >= extra)
+            return;
+
+        int newSize = Math.max(buffer.capacity() * 2, buffer.position() + extra);
+        ByteBuffer newBuffer = ByteBuffer.allocate(newSize).order(ByteOrder.LITTLE_ENDIAN);
+
+        buffer.flip();
+        newBuffer.put(buffer);
+        buffer = newBuffer;
+    }
+
+    public int position() {
+        return buffer.position();
+    }
+
+    //Moves back to an earlier position, dropping everything written after it.
+    public void rewind(int position) {
+        buffer.position(position);
+    }
+
+    public void writeByte(int value) {
+        ensureCapacity(1);
+        buffer.put((byte) value);
+    }
+
+    public void writeBoolean(boolean value) {
+        writeByte(value ? 1 : 0);
+    }
+
+    public void writeShort(int value) {
+        ensureCapacity(2);
+        buffer.putShort((short) value);
+    }
+
+    public void writeInt(int value) {
+        ensureCapacity(4);
+        buffer.putInt(value);
+    }
+
+    public void writeFloat(float value) {
+        ensureCapacity(4);
+        buffer.putFloat(value);
+    }
+
+    public void write(byte[] data) {
+        write(data, 0, data.length);
+    }
+
+    public void write(byte[] data, int offset, int length) {
+        ensureCapacity(length);
+        buffer.put(data, offset, length);
+    }
+
+    //Overwrites a short written before, used for counts that are only known after the content is written.
+    public void setShort(int position, int value) {
+        buffer.putShort(position, (short) value);
+    }
+
+    //Overwrites an int written before, used for lengths that are only known after the content is written.
+    public void setInt(int position, int value) {
+        buffer.putInt(position, value);
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+}
@@ -4,7 +4,6 @@ import com.google.common.io.LittleEndianDataOutputStream;
 import com.neovisionaries.ws.client.WebSocket;
 import net.blancworks.figura.network.NewFiguraNetworkManager;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.UUID;
@@ -14,33 +13,33 @@ public abstract class MessageSender {
     public byte[] message;
 
     public void sendMessage(WebSocket socket) {
+        MessageBuffer buffer = MessageBuffer.acquire();
+
         try {
             //Build message.
             {
-                ByteArrayOutputStream outStream = new ByteArrayOutputStream();
-                LittleEndianDataOutputStream outWriter = new LittleEndianDataOutputStream(outStream);
+                String pcName = getProtocolName();
 
-                String pcName = getProtocolName(); 
-                
                 try {
                     //Write message ID
-                    outWriter.write(NewFiguraNetworkManager.msgRegistry.getMessageId(pcName));
+                    buffer.writeByte(NewFiguraNetworkManager.msgRegistry.getMessageId(pcName));
                 } catch (Exception e){
                     e.printStackTrace();
                     return;
                 }
 
                 //Append extra header data provided up higher in the inheritence tree.
-                write(outWriter);
+                write(buffer);
 
-                message = outStream.toByteArray();
-                outStream.close();
+                message = buffer.toByteArray();
             }
 
             socket.sendBinary(message, true);
         } catch (Exception e) {
             e.printStackTrace();
             return;
+        } finally {
+            buffer.release();
         }
 
         message = null;
@@ -48,6 +47,11 @@ public abstract class MessageSender {
 
     public abstract String getProtocolName();
 
+    //Writes the message straight into the pooled buffer, by default through the stream based write.
+    protected void write(MessageBuffer buffer) throws IOException {
+        write(buffer.getWriter());
+    }
+
     protected void write(LittleEndianDataOutputStream stream) throws IOException {
     }
 
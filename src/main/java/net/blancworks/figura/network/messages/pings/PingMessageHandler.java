@@ -15,10 +15,13 @@ public class PingMessageHandler extends ChannelMessageHandler {
         
         short count = (short) Math.max(Math.min(stream.readShort(), 32), 0);
         
-        PlayerData data = PlayerDataManager.getDataForPlayer(senderID);
+        PlayerData data = PlayerDataManager.getLoadedData(senderID);
 
         if (data != null && data.script != null) {
-            for (int i = 0; i < count; i++) {
+            //pings past what this player is trusted with are dropped
+            int allowed = data.script.pingScheduler.takeReceiveBudget(count);
+
+            for (int i = 0; i < allowed; i++) {
                 short id = stream.readShort();
                 LuaValue val = LuaNetworkReadWriter.readLuaValue(stream);
                 data.script.handlePing(id, val);
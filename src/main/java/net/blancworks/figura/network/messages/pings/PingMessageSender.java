@@ -1,54 +1,45 @@
 package net.blancworks.figura.network.messages.pings;
 
-import com.google.common.io.LittleEndianDataOutputStream;
 import net.blancworks.figura.lua.CustomScript;
 import net.blancworks.figura.lua.api.network.LuaNetworkReadWriter;
+import net.blancworks.figura.network.messages.MessageBuffer;
 import net.blancworks.figura.network.messages.MessageSender;
-import org.luaj.vm2.LuaValue;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.util.ArrayList;
-import java.util.LinkedList;
-import java.util.Queue;
+import java.util.List;
 
 public class PingMessageSender extends MessageSender {
 
-    public Queue<CustomScript.LuaPing> pingSet = new LinkedList<>();
+    public final List<CustomScript.LuaPing> pingSet;
     
-    public PingMessageSender(Queue<CustomScript.LuaPing> pings){
-        pingSet.addAll(pings);
-        pings.clear();
+    public PingMessageSender(List<CustomScript.LuaPing> pings){
+        pingSet = pings;
     }
 
     @Override
-    protected void write(LittleEndianDataOutputStream stream) throws IOException {
-        super.write(stream);
+    protected void write(MessageBuffer buffer) {
+        //the length and count are only known once the pings are written, so they're filled in after
+        int lengthPosition = buffer.position();
+        buffer.writeInt(0);
+        int countPosition = buffer.position();
+        buffer.writeShort(0);
 
-        ByteArrayOutputStream outStream = new ByteArrayOutputStream();
-        LittleEndianDataOutputStream outWriter = new LittleEndianDataOutputStream(outStream);
+        int written = 0;
+        for (CustomScript.LuaPing p : pingSet) {
+            int pingPosition = buffer.position();
 
-        int setSize = pingSet.size();
-
-
-        outWriter.writeShort(setSize);
-        
-        //System.out.println("Wrote " + pingSet.size() + " pings");
-        
-        for(int i = 0; i < setSize; i++){
-            CustomScript.LuaPing p = pingSet.poll();
-            outWriter.writeShort(p.functionID);
             try {
-                LuaNetworkReadWriter.writeLuaValue(p.args, outWriter);
+                buffer.writeShort(p.functionID);
+                LuaNetworkReadWriter.writeLuaValue(p.args, buffer);
+                written++;
             } catch (Exception e) {
+                //drop the half written ping
+                buffer.rewind(pingPosition);
                 e.printStackTrace();
             }
         }
 
-        byte[] outData = outStream.toByteArray();
-
-        stream.writeInt(outData.length);
-        stream.write(outData);
+        buffer.setShort(countPosition, written);
+        buffer.setInt(lengthPosition, buffer.position() - countPosition);
     }
 
     @Override
@@ -1,6 +1,7 @@
 package net.blancworks.figura.network.messages.pubsub;
 
 import com.google.common.io.LittleEndianDataInputStream;
+import net.blancworks.figura.PlayerData;
 import net.blancworks.figura.PlayerDataManager;
 import net.blancworks.figura.network.messages.MessageHandler;
 
@@ -10,7 +11,9 @@ public class ChannelAvatarUpdateHandler extends ChannelMessageHandler {
     public void handleMessage(LittleEndianDataInputStream stream) throws Exception {
         super.handleMessage(stream);
 
-        PlayerDataManager.getDataForPlayer(senderID).isInvalidated = true;
+        PlayerData data = PlayerDataManager.getLoadedData(senderID);
+        if (data != null)
+            data.isInvalidated = true;
         
         System.out.println("AVATAR UPDATE RECEIVED");
     }
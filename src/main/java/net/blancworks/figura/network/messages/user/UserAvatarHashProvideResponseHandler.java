@@ -16,10 +16,14 @@ public class UserAvatarHashProvideResponseHandler extends MessageHandler {
         UUID id = readUUID(stream);
         String hash = readString(stream);
         
+        //Hash requested while loading the avatar, so it's checked against the cache.
+        if (PlayerDataManager.onAvatarHashReceived(id, hash))
+            return;
+
         //Handle?
-        PlayerData pDat = PlayerDataManager.getDataForPlayer(id);
+        PlayerData pDat = PlayerDataManager.getLoadedData(id);
         
-        if(!pDat.lastHash.equals(hash)){
+        if(pDat != null && !pDat.lastHash.equals(hash)){
             pDat.isInvalidated = true;   
         }
     }
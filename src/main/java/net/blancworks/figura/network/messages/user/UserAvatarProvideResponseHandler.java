@@ -1,18 +1,17 @@
 package net.blancworks.figura.network.messages.user;
 
 import com.google.common.io.LittleEndianDataInputStream;
+import net.blancworks.figura.AvatarCache;
 import net.blancworks.figura.FiguraMod;
 import net.blancworks.figura.PlayerData;
 import net.blancworks.figura.PlayerDataManager;
+import net.blancworks.figura.network.AvatarRequestBatcher;
 import net.blancworks.figura.network.messages.MessageHandler;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.nbt.NbtIo;
 
 import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
-import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.util.Date;
 import java.util.UUID;
 
 public class UserAvatarProvideResponseHandler extends MessageHandler {
@@ -25,39 +24,47 @@ public class UserAvatarProvideResponseHandler extends MessageHandler {
 
         targetUser = readUUID(stream);
 
-        try {
-            int avatarLength = stream.readInt();
-            byte[] allAvatarData = new byte[avatarLength];
-            stream.read(allAvatarData, 0, avatarLength);
+        UUID id = targetUser;
 
-            ByteArrayInputStream bis = new ByteArrayInputStream(allAvatarData);
-            DataInputStream dis = new DataInputStream(bis);
+        int avatarLength = stream.readInt();
+        byte[] allAvatarData = new byte[avatarLength];
+        stream.read(allAvatarData, 0, avatarLength);
 
-            CompoundTag tag = NbtIo.readCompressed(dis);
+        //decompressing and loading happen on the decoder threads, so the socket can read the next response meanwhile
+        AvatarRequestBatcher.decode(id, () -> {
+            try {
+                ByteArrayInputStream bis = new ByteArrayInputStream(allAvatarData);
+                DataInputStream dis = new DataInputStream(bis);
 
-            dis.close();
+                CompoundTag tag = NbtIo.readCompressed(dis);
 
-            PlayerData pData = PlayerDataManager.getDataForPlayer(targetUser);
+                dis.close();
 
-            MessageDigest md = MessageDigest.getInstance("SHA-256");
-            byte[] hashBytes = md.digest(allAvatarData);
+                //cleared or unknown players don't get their data back from a late download
+                PlayerDataManager.PendingDownload download = PlayerDataManager.takeDownload(id);
+                if (download == null)
+                    return;
 
-            String hashString = new String(hashBytes, StandardCharsets.UTF_8);
+                PlayerData pData = download.targetData;
 
-            pData.isLocalAvatar = false;
+                pData.isLocalAvatar = false;
 
-            if (FiguraMod.IS_CHEESE) {
-                FiguraMod.cheese.putUuid("id", targetUser);
-                pData.loadFromNbt(FiguraMod.cheese);
-            } else {
-                pData.loadFromNbt(tag);
-            }
+                if (FiguraMod.IS_CHEESE) {
+                    FiguraMod.cheese.putUuid("id", id);
+                    pData.loadFromNbt(FiguraMod.cheese);
+                } else {
+                    pData.loadFromNbt(tag);
+                    pData.setFileSize(avatarLength);
+                }
 
-            pData.lastHash = hashString;
-            //pData.saveToCache();
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+                //only cached under the hash the server confirmed for this download,
+                //downloads without one (like after a hash check timed out) could be a newer avatar than lastHash
+                if (download.hash != null && download.hash.equals(pData.lastHash))
+                    AvatarCache.put(id, download.hash, allAvatarData);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        });
     }
 
     @Override
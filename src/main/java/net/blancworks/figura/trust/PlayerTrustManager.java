@@ -24,6 +24,9 @@ public class PlayerTrustManager {
     public static Map<Identifier, TrustContainer> groups = new LinkedHashMap<>();
     public static Map<Identifier, TrustContainer> players = new HashMap<>();
 
+    //Bumped whenever any trust setting or parent changes, so containers know their resolved trust is outdated
+    private static volatile int version = 0;
+
     public static void init() {
         //load from presets file first then load from disk
         loadDefaultGroups();
@@ -55,6 +58,7 @@ public class PlayerTrustManager {
                 groups.put(new Identifier("group", name), container);
             });
 
+            invalidate();
             FiguraMod.LOGGER.debug("Loaded presets from assets");
         } catch (Exception e) {
             FiguraMod.LOGGER.error("Could not load presets from assets");
@@ -135,6 +139,8 @@ public class PlayerTrustManager {
                 players.put(new Identifier("player", name), container);
             }
         });
+
+        invalidate();
     }
 
     public static void saveToDisk() {
@@ -193,7 +199,7 @@ public class PlayerTrustManager {
         if (nextID == null || (nextID.getPath().equals("local") && !tc.name.equals(getClientPlayerID())) || i == groups.size())
             return false;
 
-        tc.parentID = nextID;
+        tc.setParent(nextID);
         saveToDisk();
         return true;
     }
@@ -214,11 +220,19 @@ public class PlayerTrustManager {
         if (prevID == null || i == groups.size())
             return false;
 
-        tc.parentID = prevID;
+        tc.setParent(prevID);
         saveToDisk();
         return true;
     }
 
+    public static int getVersion() {
+        return version;
+    }
+
+    public static void invalidate() {
+        version++;
+    }
+
     private static String getClientPlayerID() {
         return MinecraftClient.getInstance().player != null ? MinecraftClient.getInstance().player.getUuid().toString() : "";
     }
@@ -19,13 +19,20 @@ public class TrustContainer {
 
     private final Map<Trust, Integer> trustSettings;
 
+    //Resolved value of every trust setting, by ordinal, including the ones inherited from parents.
+    //Rebuilt on the first read after any container changed, see PlayerTrustManager.invalidate
+    private volatile int[] resolvedTrust = null;
+    private volatile int resolvedVersion = -1;
+
     public enum Trust {
         INIT_INST("maxinitinstructions", 0, 1024 * 17, 256),
         TICK_INST("maxtickinstructions", 0, 1024 * 11, 256),
         RENDER_INST("maxrenderinstructions", 0, 1024 * 11, 256),
+        SCRIPT_TIME("maxscripttime", 0, 20000, 200),
         COMPLEXITY("maxcomplexity", 0, 24 * 12 * 16, 24),
         PARTICLES("maxparticles", 0, 65, 1),
         SOUNDS("maxsfx", 0, 65, 1),
+        PINGS("maxpings", 0, 260, 4),
         VANILLA_MODEL_EDIT("allowvanillaedit"),
         NAMEPLATE_EDIT("allownameplateedit"),
         OFFSCREEN_RENDERING("allowoffscreenrendering"),
@@ -94,11 +101,33 @@ public class TrustContainer {
         }
     }
 
-    public Integer getTrust(Trust trust) {
-        Integer setting = this.trustSettings.get(trust);
-        if (setting != null) return setting;
-        if (parentID != null && PlayerTrustManager.getContainer(parentID) != null) return PlayerTrustManager.getContainer(parentID).getTrust(trust);
-        return 0;
+    public int getTrust(Trust trust) {
+        int version = PlayerTrustManager.getVersion();
+        if (resolvedVersion != version)
+            resolveTrust(version);
+
+        return resolvedTrust[trust.ordinal()];
+    }
+
+    private void resolveTrust(int version) {
+        TrustContainer parent = parentID != null ? PlayerTrustManager.getContainer(parentID) : null;
+        Trust[] values = Trust.values();
+        int[] resolved = new int[values.length];
+
+        for (Trust trust : values) {
+            Integer setting = this.trustSettings.get(trust);
+            if (setting != null) resolved[trust.ordinal()] = setting;
+            else if (parent != null) resolved[trust.ordinal()] = parent.getTrust(trust);
+        }
+
+        //array first, so a thread that sees the new version also sees its values
+        this.resolvedTrust = resolved;
+        this.resolvedVersion = version;
+    }
+
+    public void setParent(Identifier parentID) {
+        this.parentID = parentID;
+        PlayerTrustManager.invalidate();
     }
 
     public boolean isTrustEmpty() {
@@ -107,14 +136,17 @@ public class TrustContainer {
 
     public void resetAllTrust() {
         this.trustSettings.clear();
+        PlayerTrustManager.invalidate();
     }
 
     public void resetTrust(Trust trust) {
         this.trustSettings.remove(trust);
+        PlayerTrustManager.invalidate();
     }
 
     public void setTrust(Trust trust, Integer value) {
         this.trustSettings.put(trust, value);
+        PlayerTrustManager.invalidate();
     }
 
     public boolean contains(Trust trust) {
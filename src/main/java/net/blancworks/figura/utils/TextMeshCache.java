@@ -0,0 +1,226 @@
+package net.blancworks.figura.utils;
+
+import it.unimi.dsi.fastutil.floats.FloatArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import net.blancworks.figura.mixin.Matrix4fAccessorMixin;
+import net.minecraft.client.font.TextRenderer;
+import net.minecraft.client.render.RenderLayer;
+import net.minecraft.client.render.VertexConsumer;
+import net.minecraft.client.render.VertexConsumerProvider;
+import net.minecraft.text.Style;
+import net.minecraft.text.Text;
+import net.minecraft.util.math.Matrix4f;
+
+import java.util.*;
+
+//Lays text out into glyph quads once, and replays them every frame under the current matrix and light.
+//Text is laid out at the origin, so the same mesh is reused wherever it's drawn. Obfuscated text changes every frame, so it's never cached.
+//Only used from the render thread.
+public final class TextMeshCache {
+    public static final int MAX_MESHES = 512;
+
+    private static final Map<Key, TextMesh> MESHES = new LinkedHashMap<Key, TextMesh>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, TextMesh> eldest) {
+            return size() > MAX_MESHES;
+        }
+    };
+
+    private static final Map<Key, List<Text>> LINES = new LinkedHashMap<Key, List<Text>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, List<Text>> eldest) {
+            return size() > MAX_MESHES;
+        }
+    };
+
+    private static final Matrix4f IDENTITY = new Matrix4f();
+    static {
+        IDENTITY.loadIdentity();
+    }
+
+    /**
+     * Draws text like {@link TextRenderer#draw(Text, float, float, int, boolean, Matrix4f, VertexConsumerProvider, boolean, int, int)},
+     * reusing the glyph quads laid out the last time the same text was drawn.
+     *
+     * @return the width of the text
+     */
+    public static int draw(TextRenderer textRenderer, Text text, float x, float y, int color, boolean shadow, Matrix4f matrix, VertexConsumerProvider vcp, boolean seeThrough, int backgroundColor, int light) {
+        TextMesh mesh = get(textRenderer, text, color, shadow, seeThrough, backgroundColor);
+
+        if (mesh == null)
+            return textRenderer.draw(text, x, y, color, shadow, matrix, vcp, seeThrough, backgroundColor, light);
+
+        mesh.draw(matrix, x, y, vcp, light);
+        return mesh.width;
+    }
+
+    public static int getWidth(TextRenderer textRenderer, Text text) {
+        TextMesh mesh = get(textRenderer, text, -1, false, false, 0);
+        return mesh != null ? mesh.width : textRenderer.getWidth(text);
+    }
+
+    //Splits the text on new lines, reusing the lines from the last time the same text was split.
+    public static List<Text> splitLines(Text text) {
+        Key key = new Key(text, 0, false, false, 0);
+        List<Text> lines = LINES.get(key);
+
+        if (lines == null) {
+            lines = Collections.unmodifiableList(TextUtils.splitText(text, "\n"));
+            LINES.put(key, lines);
+        }
+
+        return lines;
+    }
+
+    //Drops everything, used when fonts might have changed.
+    public static void clear() {
+        MESHES.clear();
+        LINES.clear();
+    }
+
+    private static TextMesh get(TextRenderer textRenderer, Text text, int color, boolean shadow, boolean seeThrough, int backgroundColor) {
+        Key key = new Key(text, color, shadow, seeThrough, backgroundColor);
+        TextMesh mesh = MESHES.get(key);
+
+        if (mesh == null) {
+            if (isObfuscated(text))
+                return null;
+
+            mesh = new TextMesh();
+            mesh.width = textRenderer.draw(text, 0, 0, color, shadow, IDENTITY, mesh, seeThrough, backgroundColor, 0);
+            MESHES.put(key, mesh);
+        }
+
+        return mesh;
+    }
+
+    private static boolean isObfuscated(Text text) {
+        return text.visit((style, string) -> style.isObfuscated() ? Optional.of(true) : Optional.empty(), Style.EMPTY).isPresent();
+    }
+
+    //Records the quads the text renderer draws, per layer, and draws them back.
+    private static class TextMesh implements VertexConsumerProvider {
+        private final LinkedHashMap<RenderLayer, LayerMesh> layers = new LinkedHashMap<>();
+        private int width;
+
+        @Override
+        public VertexConsumer getBuffer(RenderLayer layer) {
+            return layers.computeIfAbsent(layer, l -> new LayerMesh());
+        }
+
+        public void draw(Matrix4f matrix, float offsetX, float offsetY, VertexConsumerProvider vcp, int light) {
+            Matrix4fAccessorMixin m = (Matrix4fAccessorMixin) (Object) matrix;
+            float m00 = m.getA00(), m01 = m.getA01(), m02 = m.getA02(), m03 = m.getA03();
+            float m10 = m.getA10(), m11 = m.getA11(), m12 = m.getA12(), m13 = m.getA13();
+            float m20 = m.getA20(), m21 = m.getA21(), m22 = m.getA22(), m23 = m.getA23();
+
+            for (Map.Entry<RenderLayer, LayerMesh> entry : layers.entrySet()) {
+                LayerMesh mesh = entry.getValue();
+                float[] positions = mesh.positions.elements();
+                float[] uvs = mesh.uvs.elements();
+                int[] colors = mesh.colors.elements();
+                VertexConsumer consumer = vcp.getBuffer(entry.getKey());
+
+                for (int i = 0; i < mesh.colors.size(); i++) {
+                    float x = positions[i * 3] + offsetX;
+                    float y = positions[i * 3 + 1] + offsetY;
+                    float z = positions[i * 3 + 2];
+                    int color = colors[i];
+
+                    consumer.vertex(m00 * x + m01 * y + m02 * z + m03, m10 * x + m11 * y + m12 * z + m13, m20 * x + m21 * y + m22 * z + m23)
+                            .color(color >> 16 & 0xFF, color >> 8 & 0xFF, color & 0xFF, color >>> 24)
+                            .texture(uvs[i * 2], uvs[i * 2 + 1])
+                            .light(light)
+                            .next();
+                }
+            }
+        }
+    }
+
+    //Vertices of one layer, text only uses position, color and uv, the light is given when drawing.
+    private static class LayerMesh implements VertexConsumer {
+        private final FloatArrayList positions = new FloatArrayList();
+        private final FloatArrayList uvs = new FloatArrayList();
+        private final IntArrayList colors = new IntArrayList();
+
+        private int color = -1;
+        private float u, v;
+
+        @Override
+        public VertexConsumer vertex(double x, double y, double z) {
+            positions.add((float) x);
+            positions.add((float) y);
+            positions.add((float) z);
+            return this;
+        }
+
+        @Override
+        public VertexConsumer color(int red, int green, int blue, int alpha) {
+            color = (alpha & 0xFF) << 24 | (red & 0xFF) << 16 | (green & 0xFF) << 8 | (blue & 0xFF);
+            return this;
+        }
+
+        @Override
+        public VertexConsumer texture(float u, float v) {
+            this.u = u;
+            this.v = v;
+            return this;
+        }
+
+        @Override
+        public VertexConsumer overlay(int u, int v) {
+            return this;
+        }
+
+        @Override
+        public VertexConsumer light(int u, int v) {
+            return this;
+        }
+
+        @Override
+        public VertexConsumer normal(float x, float y, float z) {
+            return this;
+        }
+
+        @Override
+        public void next() {
+            colors.add(color);
+            uvs.add(u);
+            uvs.add(v);
+            color = -1;
+        }
+    }
+
+    private static class Key {
+        private final Text text;
+        private final int color;
+        private final boolean shadow;
+        private final boolean seeThrough;
+        private final int backgroundColor;
+        private final int hash;
+
+        public Key(Text text, int color, boolean shadow, boolean seeThrough, int backgroundColor) {
+            this.text = text;
+            this.color = color;
+            this.shadow = shadow;
+            this.seeThrough = seeThrough;
+            this.backgroundColor = backgroundColor;
+            //the string too, as texts with the same style but different strings can share a hash code
+            this.hash = Objects.hash(text.getString(), text, color, shadow, seeThrough, backgroundColor);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key))
+                return false;
+
+            Key key = (Key) o;
+            return color == key.color && shadow == key.shadow && seeThrough == key.seeThrough && backgroundColor == key.backgroundColor && text.equals(key.text);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}